@@ -0,0 +1,670 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import app.nanodegree.masini.simone.sunshine.net.HttpTransport;
+import app.nanodegree.masini.simone.sunshine.net.SunshineHttp;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine
+ *
+ * The weather art of the whole app: list, detail view, widgets, notification and wear service
+ * all get their condition images from here.
+ *
+ * An art pack has a dozen images, so each (art pack, condition, size) bitmap is decoded once,
+ * down-sampled to the size asked for, and kept in an LRU bounded by bytes. The downloaded
+ * images of the active art pack are kept as well, so that a new size doesn't download them
+ * again, and {@link #prefetchActivePack()} fetches them all after a sync.
+ *
+ * The urls of the active art pack are worked out once per art pack, in a table indexed by
+ * condition id like {@link WeatherCondition}, and the bitmaps are keyed by numbers, so that
+ * finding an image already in memory builds no string.
+ *
+ * Views showing the same conditions over and over, like the forecast list, work out an
+ * {@link Art} per image once, off the main thread, and then show it with no lookup at all, see
+ * {@link #loadInto(ImageView, Art)}.
+ *
+ * Widgets get files instead of bitmaps, see {@link #getArtUri(int, int, int, int)}.
+ */
+public final class ConditionArtCache {
+
+    private static final String LOG_TAG = ConditionArtCache.class.getSimpleName();
+
+    /** The small icon of the condition (ic_*), or the art of the pack */
+    public static final int STYLE_ICON = 0;
+    /** The big art of the condition (art_*), or the art of the pack */
+    public static final int STYLE_ART = 1;
+
+    // The downloaded images, 11 of them per art pack
+    private static final int MAX_ENCODED_BYTES = 1024 * 1024;
+    // How long a download that failed is not tried again
+    private static final long RETRY_INTERVAL_MILLIS = 60 * 1000;
+    private static final int LOAD_THREADS = 2;
+    // Where getArtUri() writes the images, under the cache directory
+    private static final String ART_DIRECTORY = "condition_art";
+    // What the files of the bundled images come from: by version rather than by resource id,
+    // ids change from a version to the next, the files stay
+    private static final String BUNDLED_SOURCE = "v" + BuildConfig.VERSION_CODE;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    // How old a temporary file has to be to have been left behind rather than being written
+    private static final long STALE_TEMPORARY_MILLIS = 60 * 60 * 1000;
+
+    private static volatile ConditionArtCache sInstance;
+
+    private final Context mContext;
+    // Keyed by bundledKey() and packKey()
+    private final LruCache<Long, Bitmap> mBitmaps;
+    private final LruCache<String, byte[]> mEncoded;
+    // Guarded by mFailedDownloads
+    private final Map<String, Long> mFailedDownloads = new HashMap<String, Long>();
+    // One lock per url, so that the same image is never downloaded twice at once while other
+    // images download meanwhile. A dozen urls per art pack, kept. Guarded by itself.
+    private final Map<String, Object> mDownloadLocks = new HashMap<String, Object>();
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(LOAD_THREADS);
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // What each ImageView is waiting for, touched on the main thread only
+    private final Map<ImageView, Long> mPendingViews = new WeakHashMap<ImageView, Long>();
+    // The active art pack, null before it's first needed. Replaced, never changed.
+    private volatile ArtPack mArtPack;
+    // Guarded by this
+    private int mArtPackGeneration;
+
+    /**
+     * The urls of an art pack, worked out once.
+     */
+    private static final class ArtPack {
+        final String format;
+        // Part of the keys of the bitmaps, so that the bitmaps of an earlier art pack, even the
+        // ones still loading when it changed, are never taken for those of this one
+        final int generation;
+        // The distinct images of the pack
+        final String[] imageUrls;
+        // The image of each condition id, an index in imageUrls, -1 if there's none
+        private final int[] mImages;
+
+        ArtPack(String format, int generation) {
+            this.format = format;
+            this.generation = generation;
+            mImages = new int[WeatherCondition.MAX_CONDITION_ID + 1];
+            Map<String, Integer> imageOfSlug = new HashMap<String, Integer>();
+            for (int weatherId = 0; weatherId <= WeatherCondition.MAX_CONDITION_ID; weatherId++) {
+                String slug = WeatherCondition.forId(weatherId).artSlug;
+                if (slug == null) {
+                    mImages[weatherId] = -1;
+                    continue;
+                }
+                Integer image = imageOfSlug.get(slug);
+                if (image == null) {
+                    image = imageOfSlug.size();
+                    imageOfSlug.put(slug, image);
+                }
+                mImages[weatherId] = image;
+            }
+            imageUrls = new String[imageOfSlug.size()];
+            for (Map.Entry<String, Integer> image : imageOfSlug.entrySet()) {
+                imageUrls[image.getValue()] = String.format(Locale.US, format, image.getKey());
+            }
+        }
+
+        /**
+         * @return the image of the condition, -1 if it has none
+         */
+        int getImage(int weatherId) {
+            if (weatherId < 0 || weatherId > WeatherCondition.MAX_CONDITION_ID) {
+                return -1;
+            }
+            return mImages[weatherId];
+        }
+    }
+
+    /**
+     * The image of a condition at a size, worked out once: the bundled image and the art pack
+     * image with the key of its bitmap. Immutable, made for the art pack active at the time.
+     */
+    public static final class Art {
+        final int weatherId;
+        final int style;
+        final int width;
+        final int height;
+        // The bundled image, also shown while the art pack one loads; -1 if there's none
+        final int resource;
+        // The art pack image and the key of its bitmap, boxed once; null when there's none
+        final ArtPack pack;
+        final int image;
+        final Long packKey;
+
+        private Art(ArtPack pack, int weatherId, int style, int width, int height) {
+            this.weatherId = weatherId;
+            this.style = style;
+            this.width = width;
+            this.height = height;
+            resource = getResource(weatherId, style);
+            image = pack == null ? -1 : pack.getImage(weatherId);
+            this.pack = image == -1 ? null : pack;
+            packKey = image == -1 ? null : packKey(pack, image, width, height);
+        }
+
+        /**
+         * @return whether the other art shows the same images at the same size
+         */
+        public boolean isSameImage(Art other) {
+            return resource == other.resource && width == other.width && height == other.height
+                    && (packKey == null ? other.packKey == null : packKey.equals(other.packKey));
+        }
+    }
+
+    private ConditionArtCache(Context context) {
+        mContext = context.getApplicationContext();
+        int maxBitmapBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, Integer.MAX_VALUE);
+        mBitmaps = new LruCache<Long, Bitmap>(maxBitmapBytes) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        mEncoded = new LruCache<String, byte[]>(MAX_ENCODED_BYTES) {
+            @Override
+            protected int sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
+        pruneArtFiles();
+    }
+
+    public static ConditionArtCache get(Context context) {
+        ConditionArtCache cache = sInstance;
+        if (cache == null) {
+            synchronized (ConditionArtCache.class) {
+                cache = sInstance;
+                if (cache == null) {
+                    cache = new ConditionArtCache(context);
+                    sInstance = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @return the image of the condition if it's already in memory, null otherwise
+     */
+    public Bitmap getCached(int weatherId, int style, int width, int height) {
+        ArtPack pack = getArtPack();
+        int image = pack == null ? -1 : pack.getImage(weatherId);
+        if (image == -1) {
+            int resource = getResource(weatherId, style);
+            return resource == -1 ? null : mBitmaps.get(bundledKey(resource, width, height));
+        }
+        return mBitmaps.get(packKey(pack, image, width, height));
+    }
+
+    /**
+     * Gets the image of the condition in the active art pack, downloading and decoding it if
+     * needed. When the art pack image can't be downloaded, the one bundled with the app is
+     * returned instead. Never to be called on the main thread.
+     *
+     * @param style {@link #STYLE_ICON} or {@link #STYLE_ART}
+     * @param width the width the image is shown at, in pixels
+     * @param height the height the image is shown at, in pixels
+     * @return the image, no larger than width x height, or null if the condition has none
+     */
+    public Bitmap load(int weatherId, int style, int width, int height) {
+        ArtPack pack = getArtPack();
+        int image = pack == null ? -1 : pack.getImage(weatherId);
+        if (image != -1) {
+            Bitmap bitmap = loadFromPack(pack, image, width, height);
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+        int resource = getResource(weatherId, style);
+        return resource == -1 ? null : loadBundled(resource, width, height);
+    }
+
+    /**
+     * Like {@link #load(int, int, int, int)}, but the image is written to a PNG file, served by
+     * {@link ConditionArtProvider}, for the processes that decode it themselves (the launcher
+     * showing a widget). The file is written once per image and size. Never to be called on
+     * the main thread.
+     *
+     * @return the content uri of the image, null if the condition has none
+     */
+    public Uri getArtUri(int weatherId, int style, int width, int height) {
+        ArtPack pack = getArtPack();
+        int image = pack == null ? -1 : pack.getImage(weatherId);
+        String fileName = null;
+        Bitmap bitmap = null;
+        if (image != -1) {
+            // the url stands for art pack and condition
+            fileName = fileName(WeatherCondition.forId(weatherId).artSlug, pack.imageUrls[image],
+                    width, height);
+            if (!new File(getArtDirectory(mContext), fileName).exists()) {
+                bitmap = loadFromPack(pack, image, width, height);
+                if (bitmap == null) {
+                    fileName = null;
+                }
+            }
+        }
+        if (fileName == null) {
+            int resource = getResource(weatherId, style);
+            if (resource == -1) {
+                return null;
+            }
+            fileName = fileName("res_" + mContext.getResources().getResourceEntryName(resource),
+                    BUNDLED_SOURCE, width, height);
+            if (!new File(getArtDirectory(mContext), fileName).exists()) {
+                bitmap = loadBundled(resource, width, height);
+            }
+        }
+        if (bitmap != null && !writeArtFile(fileName, bitmap)) {
+            return null;
+        }
+        return ConditionArtProvider.buildArtUri(fileName);
+    }
+
+    private Bitmap loadFromPack(ArtPack pack, int image, int width, int height) {
+        long key = packKey(pack, image, width, height);
+        Bitmap bitmap = mBitmaps.get(key);
+        if (bitmap == null) {
+            byte[] encoded = getEncoded(pack.imageUrls[image]);
+            if (encoded != null) {
+                bitmap = decode(encoded, width, height);
+                if (bitmap != null) {
+                    mBitmaps.put(key, bitmap);
+                }
+            }
+        }
+        return bitmap;
+    }
+
+    private Bitmap loadBundled(int resource, int width, int height) {
+        long key = bundledKey(resource, width, height);
+        Bitmap bitmap = mBitmaps.get(key);
+        if (bitmap == null) {
+            bitmap = decode(mContext.getResources(), resource, width, height);
+            if (bitmap != null) {
+                mBitmaps.put(key, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * @param style {@link #STYLE_ICON} or {@link #STYLE_ART}
+     * @param width the width the image is shown at, in pixels
+     * @param height the height the image is shown at, in pixels
+     * @return the image of the condition in the active art pack, for
+     * {@link #loadInto(ImageView, Art)}
+     */
+    public Art getArt(int weatherId, int style, int width, int height) {
+        return new Art(getArtPack(), weatherId, style, width, height);
+    }
+
+    /**
+     * Like {@link #getArt(int, int, int, int)}, for the art pack of the given url format, null
+     * for the app's own graphics.
+     */
+    Art getArt(String artPackFormat, int weatherId, int style, int width, int height) {
+        ArtPack pack = artPackFormat == null ? null : getArtPack(artPackFormat);
+        return new Art(pack, weatherId, style, width, height);
+    }
+
+    /**
+     * Shows the image of the condition in an ImageView, see {@link #loadInto(ImageView, Art)}.
+     */
+    public void loadInto(ImageView view, int weatherId, int style, int width, int height) {
+        loadInto(view, getArt(weatherId, style, width, height));
+    }
+
+    /**
+     * Shows an image in an ImageView. The images bundled with the app are set right away, the
+     * ones of an art pack are loaded in the background when they're not in memory yet, showing
+     * the bundled image meanwhile. To be called on the main thread, a later call for the same
+     * view replaces the earlier one. Allocates nothing when the image is already in memory.
+     */
+    public void loadInto(final ImageView view, final Art art) {
+        if (art.pack != null) {
+            Bitmap cached = mBitmaps.get(art.packKey);
+            if (cached != null) {
+                mPendingViews.remove(view);
+                view.setImageBitmap(cached);
+                return;
+            }
+            mPendingViews.put(view, art.packKey);
+        } else {
+            mPendingViews.remove(view);
+        }
+        if (art.resource == -1) {
+            view.setImageDrawable(null);
+        } else {
+            view.setImageResource(art.resource);
+        }
+        if (art.pack == null) {
+            return;
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap loaded = loadFromPack(art.pack, art.image, art.width, art.height);
+                if (loaded == null && art.resource != -1) {
+                    loaded = loadBundled(art.resource, art.width, art.height);
+                }
+                final Bitmap bitmap = loaded;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // the view may have been recycled for another condition meanwhile
+                        if (art.packKey.equals(mPendingViews.get(view))) {
+                            mPendingViews.remove(view);
+                            view.setImageBitmap(bitmap);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Downloads in the background the images of the active art pack that aren't in memory yet.
+     */
+    public void prefetchActivePack() {
+        final ArtPack pack = getArtPack();
+        if (pack == null) {
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String url : pack.imageUrls) {
+                    getEncoded(url);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the active art pack, null when the app's own graphics are used
+     */
+    private ArtPack getArtPack() {
+        SunshineSettings settings = SunshineSettings.get(mContext);
+        return settings.localGraphics ? null : getArtPack(settings.artPackFormat);
+    }
+
+    /**
+     * @return the art pack of the given url format, which becomes the active one
+     */
+    private ArtPack getArtPack(String format) {
+        ArtPack pack = mArtPack;
+        if (pack == null || !pack.format.equals(format)) {
+            synchronized (this) {
+                pack = mArtPack;
+                if (pack == null || !pack.format.equals(format)) {
+                    boolean changed = pack != null;
+                    pack = new ArtPack(format, ++mArtPackGeneration);
+                    mArtPack = pack;
+                    if (changed) {
+                        pruneArtFiles();
+                    }
+                }
+            }
+        }
+        return pack;
+    }
+
+    /**
+     * @return the directory of the files written by getArtUri()
+     */
+    static File getArtDirectory(Context context) {
+        return new File(context.getCacheDir(), ART_DIRECTORY);
+    }
+
+    private static String fileName(String name, String source, int width, int height) {
+        return name + "_" + sourceId(source) + "_" + width + "x" + height + ".png";
+    }
+
+    private static String sourceId(String source) {
+        return Integer.toHexString(source.hashCode());
+    }
+
+    /**
+     * Deletes in the background the files written by getArtUri() that can't be served any
+     * more: the ones of other versions of the app and of other art packs, and the temporary
+     * files left behind. Done once per process and whenever the art pack changes.
+     */
+    private void pruneArtFiles() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = getArtDirectory(mContext).listFiles();
+                if (files == null) {
+                    return;
+                }
+                Set<String> sources = new HashSet<String>();
+                sources.add(sourceId(BUNDLED_SOURCE));
+                ArtPack pack = getArtPack();
+                if (pack != null) {
+                    for (String url : pack.imageUrls) {
+                        sources.add(sourceId(url));
+                    }
+                }
+                long now = System.currentTimeMillis();
+                for (File file : files) {
+                    String name = file.getName();
+                    boolean current;
+                    if (name.endsWith(TEMPORARY_SUFFIX)) {
+                        current = now - file.lastModified() < STALE_TEMPORARY_MILLIS;
+                    } else {
+                        // name_source_size.png, the name may have underscores of its own
+                        String[] parts = name.split("_");
+                        current = parts.length >= 3 && sources.contains(parts[parts.length - 2]);
+                    }
+                    if (!current && !file.delete()) {
+                        Log.w(LOG_TAG, "Can't delete " + file);
+                    }
+                }
+            }
+        });
+    }
+
+    private boolean writeArtFile(String fileName, Bitmap bitmap) {
+        File directory = getArtDirectory(mContext);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Can't create " + directory);
+            return false;
+        }
+        // written aside and renamed, the launcher never reads a partial file. The widget
+        // factories may write the same image at once, each in a file of its own.
+        File file = new File(directory, fileName);
+        File temporary = null;
+        FileOutputStream out = null;
+        boolean written = false;
+        try {
+            temporary = File.createTempFile(fileName, TEMPORARY_SUFFIX, directory);
+            out = new FileOutputStream(temporary);
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            out.close();
+            out = null;
+            written = temporary.renameTo(file);
+            return written;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing " + file, e);
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + temporary, e);
+                }
+            }
+            if (!written && temporary != null) {
+                temporary.delete();
+            }
+        }
+    }
+
+    private static int getResource(int weatherId, int style) {
+        WeatherCondition condition = WeatherCondition.forId(weatherId);
+        return style == STYLE_ART ? condition.artResource : condition.iconResource;
+    }
+
+    /**
+     * @return the key of a bundled image at a size: the resource in the upper half, the size
+     * in the lower one
+     */
+    private static long bundledKey(int resource, int width, int height) {
+        return (long) resource << 32 | (width & 0xffffL) << 16 | (height & 0xffffL);
+    }
+
+    /**
+     * @return the key of an art pack image at a size: negative, unlike the keys of the bundled
+     * images, with the generation of the pack and the image above the size
+     */
+    private static long packKey(ArtPack pack, int image, int width, int height) {
+        return Long.MIN_VALUE | (pack.generation & 0x7fffL) << 48 | (image & 0xffffL) << 32
+                | (width & 0xffffL) << 16 | (height & 0xffffL);
+    }
+
+    private byte[] getEncoded(String url) {
+        byte[] encoded = mEncoded.get(url);
+        if (encoded != null) {
+            return encoded;
+        }
+        synchronized (getDownloadLock(url)) {
+            encoded = mEncoded.get(url);
+            if (encoded != null) {
+                return encoded;
+            }
+            synchronized (mFailedDownloads) {
+                Long failedAt = mFailedDownloads.get(url);
+                if (failedAt != null && System.currentTimeMillis() - failedAt < RETRY_INTERVAL_MILLIS) {
+                    return null;
+                }
+            }
+            encoded = download(url);
+            synchronized (mFailedDownloads) {
+                if (encoded == null) {
+                    mFailedDownloads.put(url, System.currentTimeMillis());
+                } else {
+                    mFailedDownloads.remove(url);
+                }
+            }
+            if (encoded != null) {
+                mEncoded.put(url, encoded);
+            }
+            return encoded;
+        }
+    }
+
+    private Object getDownloadLock(String url) {
+        synchronized (mDownloadLocks) {
+            Object lock = mDownloadLocks.get(url);
+            if (lock == null) {
+                lock = new Object();
+                mDownloadLocks.put(url, lock);
+            }
+            return lock;
+        }
+    }
+
+    private static byte[] download(String url) {
+        HttpTransport.Response response = null;
+        try {
+            response = SunshineHttp.getTransport().get(url, null);
+            if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                return null;
+            }
+            InputStream body = response.getBody();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error retrieving art from " + url, e);
+            return null;
+        } finally {
+            if (response != null) {
+                try {
+                    response.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing the art response", e);
+                }
+            }
+        }
+    }
+
+    private static Bitmap decode(byte[] encoded, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(encoded, 0, encoded.length, options);
+        options.inSampleSize = getSampleSize(options, width, height);
+        options.inJustDecodeBounds = false;
+        return scaleToFit(BitmapFactory.decodeByteArray(encoded, 0, encoded.length, options), width, height);
+    }
+
+    private static Bitmap decode(Resources resources, int resource, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resource, options);
+        options.inSampleSize = getSampleSize(options, width, height);
+        options.inJustDecodeBounds = false;
+        return scaleToFit(BitmapFactory.decodeResource(resources, resource, options), width, height);
+    }
+
+    /**
+     * @return the largest power of two that keeps the decoded image at least width x height
+     */
+    private static int getSampleSize(BitmapFactory.Options bounds, int width, int height) {
+        int sampleSize = 1;
+        if (bounds.outWidth > 0 && bounds.outHeight > 0) {
+            while (bounds.outWidth / (sampleSize * 2) >= width
+                    && bounds.outHeight / (sampleSize * 2) >= height) {
+                sampleSize *= 2;
+            }
+        }
+        return sampleSize;
+    }
+
+    private static Bitmap scaleToFit(Bitmap bitmap, int width, int height) {
+        if (bitmap == null || (bitmap.getWidth() <= width && bitmap.getHeight() <= height)) {
+            return bitmap;
+        }
+        float scale = Math.min((float) width / bitmap.getWidth(), (float) height / bitmap.getHeight());
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+}
@@ -0,0 +1,81 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine
+ *
+ * Read-only access to the condition images written by
+ * {@link ConditionArtCache#getArtUri(int, int, int, int)}, for the widgets: their RemoteViews
+ * carry the uri of an image instead of the image itself, and the launcher decodes the file.
+ *
+ * Only the PNG files of the art directory are served, they're weather art and nothing else,
+ * which is why the provider is exported.
+ */
+public class ConditionArtProvider extends ContentProvider {
+
+    public static final String AUTHORITY = "app.nanodegree.masini.simone.sunshine.art";
+
+    private static final String MIME_TYPE = "image/png";
+
+    /**
+     * @return the uri of a file of the art directory
+     */
+    static Uri buildArtUri(String fileName) {
+        return new Uri.Builder().scheme("content").authority(AUTHORITY).appendPath(fileName).build();
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Read-only uri: " + uri);
+        }
+        String fileName = uri.getLastPathSegment();
+        // a plain file name, nothing that leads out of the art directory
+        if (uri.getPathSegments().size() != 1 || fileName == null
+                || !fileName.matches("[A-Za-z0-9_]+\\.png")) {
+            throw new FileNotFoundException("Unknown uri: " + uri);
+        }
+        File file = new File(ConditionArtCache.getArtDirectory(getContext()), fileName);
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return MIME_TYPE;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Read-only uri: " + uri);
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read-only uri: " + uri);
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read-only uri: " + uri);
+    }
+}
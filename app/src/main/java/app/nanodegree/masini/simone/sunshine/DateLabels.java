@@ -0,0 +1,127 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import android.content.Context;
+import android.util.LongSparseArray;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+import app.nanodegree.masini.simone.sunshine.shared.DayClock;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine
+ *
+ * Cache of the day labels shown by the list, the detail, the widgets and the notification,
+ * keyed by day and kind of label. The same few days are formatted over and over, so after the
+ * first bind a label costs a lookup by a primitive key, which allocates nothing.
+ *
+ * A label depends on the locale, the time zone and on which day is today, so the whole cache
+ * is dropped when any of them changes. Each cache has its own formatters, one per pattern,
+ * used under its lock like the labels.
+ */
+final class DateLabels {
+
+    // The kinds of label, see Utility for what they look like
+    static final int FRIENDLY = 0;
+    static final int FRIENDLY_LONG_TODAY = 1;
+    static final int DAY_NAME = 2;
+    static final int MONTH_DAY = 3;
+    static final int FULL_FRIENDLY = 4;
+    private static final int KINDS = 5;
+
+    private static volatile DateLabels sCurrent;
+
+    private final Locale mLocale;
+    private final DayClock mClock;
+    private final int mToday;
+    // Guarded by this, like the formatters
+    private final LongSparseArray<String> mLabels = new LongSparseArray<String>();
+    private SimpleDateFormat mMonthDayFormat;
+    private SimpleDateFormat mDayNameFormat;
+    private SimpleDateFormat mLaterDayFormat;
+
+    private DateLabels(Locale locale, DayClock clock, int today) {
+        mLocale = locale;
+        mClock = clock;
+        mToday = today;
+    }
+
+    /**
+     * @return the label of the given kind for the day of dateInMillis
+     */
+    static String get(Context context, long dateInMillis, int kind) {
+        DayClock clock = DayClock.getDefault();
+        Locale locale = Locale.getDefault();
+        int today = clock.getEpochDay(System.currentTimeMillis());
+
+        DateLabels labels = sCurrent;
+        // a new clock means the time zone may have changed
+        if (labels == null || labels.mToday != today || labels.mClock != clock
+                || !labels.mLocale.equals(locale)) {
+            labels = new DateLabels(locale, clock, today);
+            sCurrent = labels;
+        }
+
+        int day = clock.getEpochDay(dateInMillis);
+        long key = (long) day * KINDS + kind;
+        synchronized (labels) {
+            String label = labels.mLabels.get(key);
+            if (label == null) {
+                label = labels.format(context, dateInMillis, day, kind);
+                labels.mLabels.put(key, label);
+            }
+            return label;
+        }
+    }
+
+    private SimpleDateFormat newFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, mLocale);
+        format.setTimeZone(mClock.getTimeZone());
+        return format;
+    }
+
+    private String format(Context context, long dateInMillis, int day, int kind) {
+        switch (kind) {
+            case FRIENDLY_LONG_TODAY:
+                // For today: "Today, June 8"
+                if (day == mToday) {
+                    return context.getString(R.string.format_full_friendly_date,
+                            context.getString(R.string.today), format(context, dateInMillis, day, MONTH_DAY));
+                }
+                return format(context, dateInMillis, day, FRIENDLY);
+            case FRIENDLY:
+                // For the next days: "Wednesday" (just the day name, "Today" and "Tomorrow"
+                // included), for all days after that: "Mon Jun 8"
+                if (day < mToday + 7) {
+                    return format(context, dateInMillis, day, DAY_NAME);
+                }
+                if (mLaterDayFormat == null) {
+                    mLaterDayFormat = newFormat("EEE d MMMM");
+                }
+                return mLaterDayFormat.format(dateInMillis);
+            case DAY_NAME:
+                if (day == mToday) {
+                    return context.getString(R.string.today);
+                } else if (day == mToday + 1) {
+                    return context.getString(R.string.tomorrow);
+                }
+                // Otherwise, the format is just the day of the week (e.g "Wednesday")
+                if (mDayNameFormat == null) {
+                    mDayNameFormat = newFormat("EEEE");
+                }
+                return mDayNameFormat.format(dateInMillis);
+            case MONTH_DAY:
+                if (mMonthDayFormat == null) {
+                    mMonthDayFormat = newFormat("d MMMM");
+                }
+                return mMonthDayFormat.format(dateInMillis);
+            case FULL_FRIENDLY:
+                return context.getString(R.string.format_full_friendly_date,
+                        format(context, dateInMillis, day, DAY_NAME),
+                        format(context, dateInMillis, day, MONTH_DAY));
+            default:
+                throw new IllegalArgumentException("Unknown kind of label: " + kind);
+        }
+    }
+}
@@ -34,8 +34,6 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.bumptech.glide.Glide;
-
 import app.nanodegree.masini.simone.sunshine.data.WeatherContract;
 import app.nanodegree.masini.simone.sunshine.data.WeatherContract.WeatherEntry;
 
@@ -190,14 +188,9 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
 
             // Use weather art image
-            if(Utility.usingLocalGraphics(getActivity())){
-                mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
-            }else {
-                Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
-                        .error(Utility.getArtResourceForWeatherCondition(weatherId))
-                        .into(mIconView);
-            }
+            int iconSize = getResources().getDimensionPixelSize(R.dimen.today_icon);
+            ConditionArtCache.get(getActivity()).loadInto(mIconView, weatherId,
+                    ConditionArtCache.STYLE_ART, iconSize, iconSize);
             // Read date from cursor and update views for day of week and date
             long date = data.getLong(COL_WEATHER_DATE);
             String dateText = Utility.getFullFriendlyDayString(getActivity(), date);
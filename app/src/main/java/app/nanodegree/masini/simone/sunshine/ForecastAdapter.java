@@ -1,7 +1,6 @@
 package app.nanodegree.masini.simone.sunshine;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
@@ -11,13 +10,11 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.bumptech.glide.Glide;
-
-import app.nanodegree.masini.simone.sunshine.data.WeatherContract;
+import java.util.List;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link Cursor} to a {@link android.widget.ListView}.
+ * from {@link ForecastRows} to a {@link android.widget.ListView}.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -26,7 +23,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
-    private Cursor mCursor;
+    private ForecastRows mRows;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -56,9 +53,11 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            if (adapterPosition == RecyclerView.NO_POSITION) {
+                // the row is on its way out, e.g. a click during the removal of its day
+                return;
+            }
+            mClickHandler.onClick(mRows.get(adapterPosition).date, this);
         }
     }
 
@@ -70,6 +69,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Rows are identified by their weather _ID, the choice manager follows them by id
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -97,62 +98,64 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     }
 
     @Override
-    public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
-        int defaultImage;
-        boolean useLongToday;
-
-        switch (getItemViewType(position)) {
-            case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
-                break;
-            default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+    public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position, List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(forecastAdapterViewHolder, position);
+            return;
         }
-
-        if (Utility.usingLocalGraphics(mContext)) {
-            forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
-        } else {
-            Glide.with(mContext)
-                .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
-                .error(defaultImage)
-                .crossFade()
-                .into(forecastAdapterViewHolder.mIconView);
+        // Only some fields of the row have changed, see ForecastRows.diffFrom()
+        int changes = 0;
+        for (int i = 0; i < payloads.size(); i++) {
+            changes |= (Integer) payloads.get(i);
+        }
+        ForecastRows.Row row = mRows.get(position);
+        boolean today = getItemViewType(position) == VIEW_TYPE_TODAY;
+        if ((changes & ForecastRows.CHANGED_CONDITION) != 0) {
+            bindCondition(forecastAdapterViewHolder, row, today);
+        }
+        if ((changes & ForecastRows.CHANGED_DATE) != 0) {
+            forecastAdapterViewHolder.mDateView.setText(today ? row.todayDateText : row.dateText);
         }
+        if ((changes & ForecastRows.CHANGED_TEMPERATURE) != 0) {
+            bindTemperatures(forecastAdapterViewHolder, row);
+        }
+        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+    }
+
+    @Override
+    public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
+        // Everything has been formatted by ForecastLoader, here it's only set on the views
+        ForecastRows.Row row = mRows.get(position);
+        boolean today = getItemViewType(position) == VIEW_TYPE_TODAY;
 
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
+        bindCondition(forecastAdapterViewHolder, row, today);
 
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, row.transitionName);
 
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDateView.setText(today ? row.todayDateText : row.dateText);
 
         // For accessibility, add a content description to the icon field
         //viewHolder.iconView.setContentDescription(description);
 
+        bindTemperatures(forecastAdapterViewHolder, row);
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+    }
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, low));
+    private void bindCondition(ForecastAdapterViewHolder forecastAdapterViewHolder, ForecastRows.Row row, boolean today) {
+        ConditionArtCache.get(mContext).loadInto(forecastAdapterViewHolder.mIconView,
+                today ? row.todayArt : row.listArt);
 
-        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+        forecastAdapterViewHolder.mDescriptionView.setText(row.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.descriptionA11y);
+    }
+
+    private void bindTemperatures(ForecastAdapterViewHolder forecastAdapterViewHolder, ForecastRows.Row row) {
+        forecastAdapterViewHolder.mHighTempView.setText(row.highText);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.highA11y);
+
+        forecastAdapterViewHolder.mLowTempView.setText(row.lowText);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.lowA11y);
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
@@ -164,19 +167,28 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    @Override
+    public long getItemId(int position) {
+        return mRows.get(position).id;
+    }
+
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-            return mCursor.getCount();
+        if ( null == mRows ) return 0;
+            return mRows.size();
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
+    public void swapRows(ForecastRows newRows) {
+        ForecastRows oldRows = mRows;
+        mRows = newRows;
+        // Only the rows that differ are bound again, when the loader could tell which ones
+        if (newRows == null || !newRows.dispatchChanges(oldRows, this)) {
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
-    public Cursor getCursor() {
-        return mCursor;
+    public ForecastRows getRows() {
+        return mRows;
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -0,0 +1,112 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.AsyncTaskLoader;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine
+ *
+ * Loads the forecast list as {@link ForecastRows}: the query and the formatting of every row
+ * happen on the loader thread, the main thread only gets the finished rows.
+ *
+ * Like a CursorLoader it reloads when the provider notifies a change of the queried data,
+ * which is also how changes of units and art pack arrive. A change of locale or of the current
+ * day is caught when the loader is started again.
+ *
+ * New rows are compared with the ones delivered before, still on the loader thread, so that
+ * the adapter only has to dispatch the differences.
+ */
+class ForecastLoader extends AsyncTaskLoader<ForecastRows> {
+
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private final Uri mUri;
+    private final String[] mProjection;
+    private final String mSortOrder;
+
+    // Set on the main thread, read by loadInBackground() to compare the new rows with
+    private volatile ForecastRows mRows;
+    // Kept open until the rows are replaced, to be told about changes of its data
+    private Cursor mCursor;
+
+    ForecastLoader(Context context, Uri uri, String[] projection, String sortOrder) {
+        super(context);
+        mUri = uri;
+        mProjection = projection;
+        mSortOrder = sortOrder;
+    }
+
+    @Override
+    public ForecastRows loadInBackground() {
+        Cursor cursor = getContext().getContentResolver()
+                .query(mUri, mProjection, null, null, mSortOrder);
+        if (cursor == null) {
+            return ForecastRows.EMPTY;
+        }
+        try {
+            cursor.registerContentObserver(mObserver);
+            ForecastRows rows = ForecastRows.build(getContext(), cursor);
+            ForecastRows previous = mRows;
+            if (previous != null) {
+                rows.diffFrom(previous);
+            }
+            synchronized (this) {
+                if (isAbandoned() || isReset()) {
+                    cursor.close();
+                    return rows;
+                }
+                closeCursor();
+                mCursor = cursor;
+            }
+            return rows;
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void deliverResult(ForecastRows rows) {
+        if (isReset()) {
+            return;
+        }
+        mRows = rows;
+        if (isStarted()) {
+            super.deliverResult(rows);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mRows != null) {
+            deliverResult(mRows);
+        }
+        if (takeContentChanged() || mRows == null || !mRows.isCurrent(getContext())) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        mRows = null;
+        synchronized (this) {
+            closeCursor();
+        }
+    }
+
+    private void closeCursor() {
+        if (mCursor != null && !mCursor.isClosed()) {
+            mCursor.close();
+        }
+        mCursor = null;
+    }
+}
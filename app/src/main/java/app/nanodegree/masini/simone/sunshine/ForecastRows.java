@@ -0,0 +1,323 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.v7.widget.RecyclerView;
+
+import java.lang.ref.WeakReference;
+import java.util.Locale;
+
+import app.nanodegree.masini.simone.sunshine.shared.DayClock;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine
+ *
+ * The forecast list ready to be shown: one {@link Row} per day, holding the final strings,
+ * content descriptions and condition images of the row, so that binding a row is just setting
+ * them on its views.
+ *
+ * Built by {@link ForecastLoader} on its background thread from the cursor it queried. The
+ * rows depend on the units, the art pack, the locale and on which day is today besides the
+ * data, {@link #isCurrent(Context)} tells whether they still match.
+ *
+ * The loader also compares new rows with the previous ones, by date and weather id, so that
+ * the list is told only about the rows that have been removed, inserted or changed, see
+ * {@link #dispatchChanges(ForecastRows, RecyclerView.Adapter)}.
+ */
+final class ForecastRows {
+
+    static final ForecastRows EMPTY = new ForecastRows(new Row[0], null, null, false, null, null, -1);
+
+    // What has changed in a row, the payload of its change
+    static final int CHANGED_DATE = 1;
+    static final int CHANGED_CONDITION = 1 << 1;
+    static final int CHANGED_TEMPERATURE = 1 << 2;
+    // The row needs to be bound again as a whole
+    private static final int CHANGED_ALL = -1;
+
+    private static final int OPERATION_REMOVE = 0;
+    private static final int OPERATION_INSERT = 1;
+    private static final int OPERATION_CHANGE = 2;
+
+    /**
+     * A forecast list item, immutable.
+     */
+    static final class Row {
+        final long id;
+        final long date;
+        final int weatherId;
+        /** The condition image, as shown by the list items of the next days */
+        final ConditionArtCache.Art listArt;
+        /** The condition image, as shown by the "today" list item */
+        final ConditionArtCache.Art todayArt;
+        /** Label of the date, as shown by the list items of the next days */
+        final String dateText;
+        /** Label of the date, as shown by the "today" list item */
+        final String todayDateText;
+        final String description;
+        final String descriptionA11y;
+        final String highText;
+        final String highA11y;
+        final String lowText;
+        final String lowA11y;
+        final String transitionName;
+
+        Row(long id, long date, int weatherId,
+            ConditionArtCache.Art listArt, ConditionArtCache.Art todayArt,
+            String dateText, String todayDateText, String description, String descriptionA11y,
+            String highText, String highA11y, String lowText, String lowA11y) {
+            this.id = id;
+            this.date = date;
+            this.weatherId = weatherId;
+            this.listArt = listArt;
+            this.todayArt = todayArt;
+            this.dateText = dateText;
+            this.todayDateText = todayDateText;
+            this.description = description;
+            this.descriptionA11y = descriptionA11y;
+            this.highText = highText;
+            this.highA11y = highA11y;
+            this.lowText = lowText;
+            this.lowA11y = lowA11y;
+            // by date rather than by position, positions move when days come and go
+            transitionName = "iconView" + date;
+        }
+
+        private static Row read(Context context, Cursor cursor, ConditionArtCache artCache,
+                                String artPackFormat, int iconSize, int todayIconSize) {
+            long date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            String description = Utility.getStringForWeatherCondition(context, weatherId);
+            String highText = Utility.formatTemperature(context,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+            String lowText = Utility.formatTemperature(context,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+            return new Row(cursor.getLong(ForecastFragment.COL_WEATHER_ID), date, weatherId,
+                    artCache.getArt(artPackFormat, weatherId, ConditionArtCache.STYLE_ICON,
+                            iconSize, iconSize),
+                    artCache.getArt(artPackFormat, weatherId, ConditionArtCache.STYLE_ART,
+                            todayIconSize, todayIconSize),
+                    Utility.getFriendlyDayString(context, date, false),
+                    Utility.getFriendlyDayString(context, date, true),
+                    description, context.getString(R.string.a11y_forecast, description),
+                    highText, context.getString(R.string.a11y_high_temp, highText),
+                    lowText, context.getString(R.string.a11y_low_temp, lowText));
+        }
+
+        /**
+         * @return what has changed from the other row of the same day, a combination of the
+         * CHANGED_ flags
+         */
+        private int changesFrom(Row other) {
+            int changes = 0;
+            if (!dateText.equals(other.dateText) || !todayDateText.equals(other.todayDateText)) {
+                changes |= CHANGED_DATE;
+            }
+            if (weatherId != other.weatherId || !description.equals(other.description)
+                    || !listArt.isSameImage(other.listArt) || !todayArt.isSameImage(other.todayArt)) {
+                changes |= CHANGED_CONDITION;
+            }
+            if (!highText.equals(other.highText) || !lowText.equals(other.lowText)) {
+                changes |= CHANGED_TEMPERATURE;
+            }
+            return changes;
+        }
+    }
+
+    private final Row[] mRows;
+    private final String mCoordLat;
+    private final String mCoordLong;
+    // What the rows were built with
+    private final boolean mMetric;
+    private final String mArtPackFormat;
+    private final Locale mLocale;
+    private final int mToday;
+
+    // The changes from the rows these were compared with, set by diffFrom()
+    private WeakReference<ForecastRows> mBase;
+    private int mOperationCount;
+    private int[] mOperations;
+    private int[] mPositions;
+    private int[] mCounts;
+    private int[] mPayloads;
+
+    ForecastRows(Row[] rows, String coordLat, String coordLong,
+                         boolean metric, String artPackFormat, Locale locale, int today) {
+        mRows = rows;
+        mCoordLat = coordLat;
+        mCoordLong = coordLong;
+        mMetric = metric;
+        mArtPackFormat = artPackFormat;
+        mLocale = locale;
+        mToday = today;
+    }
+
+    /**
+     * Builds the rows of a cursor with the columns of ForecastFragment.FORECAST_COLUMNS.
+     * Meant for a background thread.
+     */
+    static ForecastRows build(Context context, Cursor cursor) {
+        SunshineSettings settings = SunshineSettings.get(context);
+        Locale locale = Locale.getDefault();
+        int today = DayClock.getDefault().getEpochDay(System.currentTimeMillis());
+        String artPackFormat = settings.localGraphics ? null : settings.artPackFormat;
+        ConditionArtCache artCache = ConditionArtCache.get(context);
+        int iconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        int todayIconSize = context.getResources().getDimensionPixelSize(R.dimen.today_icon);
+
+        Row[] rows = new Row[cursor.getCount()];
+        String coordLat = null;
+        String coordLong = null;
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            rows[i] = Row.read(context, cursor, artCache, artPackFormat, iconSize, todayIconSize);
+            if (i == 0) {
+                coordLat = cursor.getString(ForecastFragment.COL_COORD_LAT);
+                coordLong = cursor.getString(ForecastFragment.COL_COORD_LONG);
+            }
+        }
+        return new ForecastRows(rows, coordLat, coordLong,
+                settings.metric, settings.artPackFormat, locale, today);
+    }
+
+    /**
+     * Compares the rows with the ones they replace, both sorted by date. Meant for the
+     * background thread that built them, before they're published.
+     */
+    void diffFrom(ForecastRows base) {
+        Row[] oldRows = base.mRows;
+        Row[] newRows = mRows;
+        int capacity = oldRows.length + newRows.length;
+        mOperations = new int[capacity];
+        mPositions = new int[capacity];
+        mCounts = new int[capacity];
+        mPayloads = new int[capacity];
+        mOperationCount = 0;
+
+        // The operations are dispatched in order: the rows before position are already the new
+        // ones, the rows after it are still the old ones
+        int oldIndex = 0;
+        int newIndex = 0;
+        int position = 0;
+        while (oldIndex < oldRows.length || newIndex < newRows.length) {
+            Row oldRow = oldIndex < oldRows.length ? oldRows[oldIndex] : null;
+            Row newRow = newIndex < newRows.length ? newRows[newIndex] : null;
+            if (newRow == null || (oldRow != null && oldRow.date < newRow.date)) {
+                addOperation(OPERATION_REMOVE, position, 0);
+                oldIndex++;
+            } else if (oldRow == null || newRow.date < oldRow.date) {
+                addOperation(OPERATION_INSERT, position++, 0);
+                newIndex++;
+            } else if (oldRow.id != newRow.id) {
+                // the day has been written again as a new row
+                addOperation(OPERATION_REMOVE, position, 0);
+                addOperation(OPERATION_INSERT, position++, 0);
+                oldIndex++;
+                newIndex++;
+            } else {
+                int changes = newRow.changesFrom(oldRow);
+                if ((newIndex == 0) != (oldIndex == 0)) {
+                    // a row that became the first one, or that no longer is: the first row has a
+                    // layout of its own
+                    changes = CHANGED_ALL;
+                }
+                if (changes != 0) {
+                    addOperation(OPERATION_CHANGE, position, changes);
+                }
+                position++;
+                oldIndex++;
+                newIndex++;
+            }
+        }
+        mBase = new WeakReference<ForecastRows>(base);
+    }
+
+    private void addOperation(int operation, int position, int payload) {
+        int last = mOperationCount - 1;
+        if (last >= 0 && mOperations[last] == operation && mPayloads[last] == payload
+                && mPositions[last] + (operation == OPERATION_REMOVE ? 0 : mCounts[last]) == position) {
+            mCounts[last]++;
+            return;
+        }
+        mOperations[mOperationCount] = operation;
+        mPositions[mOperationCount] = position;
+        mCounts[mOperationCount] = 1;
+        mPayloads[mOperationCount] = payload;
+        mOperationCount++;
+    }
+
+    /**
+     * Notifies the adapter of the rows that have changed, if these rows have been compared with
+     * the ones it's currently showing.
+     *
+     * @return false if the changes are unknown and the adapter has to be notified some other way
+     */
+    boolean dispatchChanges(ForecastRows current, RecyclerView.Adapter adapter) {
+        if (mBase == null || current == null || mBase.get() != current) {
+            return false;
+        }
+        for (int i = 0; i < mOperationCount; i++) {
+            switch (mOperations[i]) {
+                case OPERATION_REMOVE:
+                    adapter.notifyItemRangeRemoved(mPositions[i], mCounts[i]);
+                    break;
+                case OPERATION_INSERT:
+                    adapter.notifyItemRangeInserted(mPositions[i], mCounts[i]);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(mPositions[i], mCounts[i],
+                            mPayloads[i] == CHANGED_ALL ? null : mPayloads[i]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return false when the units, the art pack, the locale or the current day have changed
+     * since the rows were built
+     */
+    boolean isCurrent(Context context) {
+        if (this == EMPTY) {
+            return true;
+        }
+        SunshineSettings settings = SunshineSettings.get(context);
+        return mMetric == settings.metric
+                && mArtPackFormat.equals(settings.artPackFormat)
+                && mLocale.equals(Locale.getDefault())
+                && mToday == DayClock.getDefault().getEpochDay(System.currentTimeMillis());
+    }
+
+    int size() {
+        return mRows.length;
+    }
+
+    Row get(int position) {
+        return mRows[position];
+    }
+
+    /**
+     * @return the position of the row of the given date, -1 if there's none
+     */
+    int indexOfDate(long date) {
+        for (int i = 0; i < mRows.length; i++) {
+            if (mRows[i].date == date) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the latitude of the location of the rows, null if there are no rows
+     */
+    String getCoordLat() {
+        return mCoordLat;
+    }
+
+    /**
+     * @return the longitude of the location of the rows, null if there are no rows
+     */
+    String getCoordLong() {
+        return mCoordLong;
+    }
+}
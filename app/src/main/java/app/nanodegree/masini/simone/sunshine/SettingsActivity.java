@@ -48,6 +48,7 @@ public class SettingsActivity extends PreferenceActivity
         // For all preferences, attach an OnPreferenceChangeListener so the UI summary can be
         // updated when the preference changes.
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_location_key)));
+        bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_favorite_locations_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_units_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_art_pack_key)));
     }
@@ -135,9 +136,14 @@ public class SettingsActivity extends PreferenceActivity
             // first clear locationStatus
             Utility.resetLocationStatus(this);
             SunshineSyncAdapter.syncImmediately(this);
+        } else if ( key.equals(getString(R.string.pref_favorite_locations_key)) ) {
+            // the new favorites need their forecast too
+            SunshineSyncAdapter.syncImmediately(this);
         } else if ( key.equals(getString(R.string.pref_units_key)) ) {
-            // units have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // units have changed. update lists of weather entries accordingly, only the
+            // forecast of the preferred location is on screen
+            getContentResolver().notifyChange(WeatherContract.WeatherEntry.buildWeatherLocation(
+                    Utility.getPreferredLocation(this)), null);
         }
         else if ( key.equals(getString(R.string.pref_location_status_key)) ) {
             // our location status has changed.  Update the summary accordingly
@@ -145,7 +151,8 @@ public class SettingsActivity extends PreferenceActivity
             bindPreferenceSummaryToValue(locationPreference);
         }
         else if ( key.equals(getString(R.string.pref_art_pack_key)) ){
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            getContentResolver().notifyChange(WeatherContract.WeatherEntry.buildWeatherLocation(
+                    Utility.getPreferredLocation(this)), null);
         }
     }
 
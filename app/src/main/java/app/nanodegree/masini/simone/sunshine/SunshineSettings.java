@@ -0,0 +1,79 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine
+ *
+ * An immutable snapshot of the settings read while binding rows: location, units and art pack.
+ *
+ * The snapshot is read from the preferences once and rebuilt only when one of them changes,
+ * so {@link #get(Context)} is just a volatile read. It's what the Utility helpers use.
+ */
+public final class SunshineSettings {
+
+    private static volatile SunshineSettings sCurrent;
+
+    // Kept here: SharedPreferences only holds weak references to its listeners
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    public final String preferredLocation;
+    public final boolean metric;
+    /** true when the art pack is the one bundled with the app */
+    public final boolean localGraphics;
+    /** Format of the art urls of the art pack, to be completed with a condition art slug */
+    public final String artPackFormat;
+
+    private SunshineSettings(Context context, SharedPreferences prefs) {
+        preferredLocation = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String metricUnits = context.getString(R.string.pref_units_metric);
+        metric = prefs.getString(context.getString(R.string.pref_units_key), metricUnits)
+                .equals(metricUnits);
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        artPackFormat = prefs.getString(context.getString(R.string.pref_art_pack_key), sunshineArtPack);
+        localGraphics = artPackFormat.equals(sunshineArtPack);
+    }
+
+    /**
+     * @return the current settings
+     */
+    public static SunshineSettings get(Context context) {
+        SunshineSettings settings = sCurrent;
+        if (settings == null) {
+            synchronized (SunshineSettings.class) {
+                settings = sCurrent;
+                if (settings == null) {
+                    final Context appContext = context.getApplicationContext();
+                    final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+                    sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                        @Override
+                        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                            if (key == null
+                                    || key.equals(appContext.getString(R.string.pref_location_key))
+                                    || key.equals(appContext.getString(R.string.pref_units_key))
+                                    || key.equals(appContext.getString(R.string.pref_art_pack_key))) {
+                                sCurrent = new SunshineSettings(appContext, sharedPreferences);
+                            }
+                        }
+                    };
+                    // Registered before reading, so that no change can be missed
+                    prefs.registerOnSharedPreferenceChangeListener(sListener);
+                    settings = new SunshineSettings(appContext, prefs);
+                    if (sCurrent == null) {
+                        sCurrent = settings;
+                    } else {
+                        // the listener has already published a newer snapshot
+                        settings = sCurrent;
+                    }
+                }
+            }
+        }
+        return settings;
+    }
+}
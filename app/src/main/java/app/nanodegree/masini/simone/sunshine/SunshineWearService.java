@@ -1,8 +1,10 @@
 package app.nanodegree.masini.simone.sunshine;
 
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.net.Uri;
 
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.wearable.Asset;
@@ -13,16 +15,12 @@ import com.google.android.gms.wearable.Wearable;
 import com.google.android.gms.wearable.WearableListenerService;
 
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.net.URL;
+import java.nio.ByteBuffer;
 
 import app.nanodegree.masini.simone.sunshine.data.WeatherContract;
-import app.nanodegree.masini.simone.sunshine.data.WeatherDbHelper;
 
 public class SunshineWearService extends WearableListenerService  {
 
-    GoogleApiClient mGoogleApiClient;
-
     private static final String[] FORECAST_COLUMNS = {
             WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
             WeatherContract.WeatherEntry.COLUMN_DATE,
@@ -35,94 +33,204 @@ public class SunshineWearService extends WearableListenerService  {
             WeatherContract.LocationEntry.COLUMN_COORD_LONG
     };
 
-    private static final String sLocationSettingWithStartDateSelection =
-            WeatherContract.LocationEntry.TABLE_NAME+
-                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
-                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
-
-    private static final String tableName = WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
-            WeatherContract.LocationEntry.TABLE_NAME +
-            " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
-            "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
-            " = " + WeatherContract.LocationEntry.TABLE_NAME +
-            "." + WeatherContract.LocationEntry._ID;
-
+    static final int COL_WEATHER_DATE = 1;
     static final int COL_WEATHER_MAX_TEMP = 3;
     static final int COL_WEATHER_MIN_TEMP = 4;
     static final int COL_WEATHER_CONDITION_ID = 6;
 
-    @Override
-    public void onCreate() {
-        super.onCreate();
-        mGoogleApiClient = new GoogleApiClient.Builder(this)
-                .addApi(Wearable.API)
-                .build();
-        mGoogleApiClient.connect();
+    // Size of the icon sent to the watch when it doesn't tell the size of its icon box
+    private static final int WEAR_ICON_SIZE = 128;
+
+    // What has been published to the watch, and the size of its icon box
+    private static final String WEAR_PREFS = "wear";
+    private static final String PREF_PUBLISHED_FORECAST = "published_forecast";
+    private static final String PREF_ICON_WIDTH = "icon_width";
+    private static final String PREF_ICON_HEIGHT = "icon_height";
+
+    // Keeps the icons encoded and the one last sent
+    private static final WearForecastSender<Bitmap> sSender = new WearForecastSender<Bitmap>() {
+        @Override
+        protected byte[] encode(Bitmap bitmap) {
+            final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
+            return byteStream.toByteArray();
+        }
+    };
+
+    private static class TodayForecast {
+        final long date;
+        final String tempMax;
+        final String tempMin;
+        final int weatherId;
+        // The art pack the icon comes from, part of what has been published
+        final String artPackFormat;
+
+        TodayForecast(long date, String tempMax, String tempMin, int weatherId,
+                      String artPackFormat) {
+            this.date = date;
+            this.tempMax = tempMax;
+            this.tempMin = tempMin;
+            this.weatherId = weatherId;
+            this.artPackFormat = artPackFormat;
+        }
+
+        @Override
+        public String toString() {
+            return date + "|" + tempMax + "|" + tempMin + "|" + weatherId + "|" + artPackFormat;
+        }
+    }
+
+    /**
+     * The data layer of the Wearable API, through a connected client.
+     */
+    private static class DataApiLayer implements WearForecastSender.DataLayer {
+        private final GoogleApiClient mClient;
+
+        DataApiLayer(GoogleApiClient client) {
+            mClient = client;
+        }
+
+        @Override
+        public boolean putIcon(byte[] icon, String digest) {
+            PutDataMapRequest iconRequest = PutDataMapRequest.create("/weather-icon");
+            iconRequest.getDataMap().putAsset("icon", Asset.createFromBytes(icon));
+            iconRequest.getDataMap().putString("icon-digest", digest);
+            return Wearable.DataApi.putDataItem(mClient, iconRequest.asPutDataRequest())
+                    .await().getStatus().isSuccess();
+        }
+
+        @Override
+        public boolean putForecast(long date, String tempMax, String tempMin, int weatherId) {
+            PutDataMapRequest putDataMapRequest = PutDataMapRequest.create("/weather-info");
+
+            putDataMapRequest.getDataMap().putLong("date", date);
+            putDataMapRequest.getDataMap().putString("temp-max", tempMax);
+            putDataMapRequest.getDataMap().putString("temp-min", tempMin);
+            putDataMapRequest.getDataMap().putInt("weather-id", weatherId);
+
+            PutDataRequest request = putDataMapRequest.asPutDataRequest();
+            return Wearable.DataApi.putDataItem(mClient, request).await().getStatus().isSuccess();
+        }
     }
 
     @Override
     public void onMessageReceived(MessageEvent messageEvent) {
+        // The fallback of the forecasts published by publishToday(): the watch asks when its
+        // data layer has nothing for today
         if(messageEvent.getPath().equals("/path/requestInfo")){
-            String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
-            String locationSetting = Utility.getPreferredLocation(this);
-
-            long normalizedDate = Utility.normalizeDate(System.currentTimeMillis());
-            String[] selectionArgs = new String[]{locationSetting, Long.toString(normalizedDate)};
-
-            WeatherDbHelper dbHelper = new WeatherDbHelper(this);
-            Cursor c = dbHelper.getReadableDatabase().query(
-                    tableName,
-                    FORECAST_COLUMNS,
-                    sLocationSettingWithStartDateSelection,
-                    selectionArgs,
-                    null,
-                    null,
-                    sortOrder);
-
-            if(c!=null && c.moveToFirst()){
-                double max = c.getInt(COL_WEATHER_MAX_TEMP);
-                double min = c.getInt(COL_WEATHER_MIN_TEMP);
-                String tMax = Utility.formatTemperature(this, max);
-                String tMin = Utility.formatTemperature(this, min);
-                int weatherId = c.getInt(COL_WEATHER_CONDITION_ID);
-                c.close();
-                sendData(tMax, tMin, weatherId);
+            TodayForecast today = queryToday(this);
+            if (today == null) {
+                return;
             }
-        }
-    }
-
-    public void sendData(String tempMax, String tempMin, int weatherId){
-        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create("/weather-info");
-
-        putDataMapRequest.getDataMap().putString("temp-max", tempMax);
-        putDataMapRequest.getDataMap().putString("temp-min", tempMin);
 
-        Bitmap bitmap;
-        if (Utility.usingLocalGraphics(this)) {
-            bitmap = BitmapFactory.decodeResource(getResources(), Utility.getIconResourceForWeatherCondition(weatherId));
-        }else{
+            // The watch sends the size of the box it draws the icon in, kept for the next
+            // forecasts published by the sync
+            int iconWidth = WEAR_ICON_SIZE;
+            int iconHeight = WEAR_ICON_SIZE;
+            SharedPreferences prefs = getSharedPreferences(WEAR_PREFS, MODE_PRIVATE);
+            byte[] data = messageEvent.getData();
+            if (data != null && data.length >= 8) {
+                ByteBuffer size = ByteBuffer.wrap(data);
+                int width = size.getInt();
+                int height = size.getInt();
+                if (width > 0 && height > 0) {
+                    iconWidth = width;
+                    iconHeight = height;
+                    prefs.edit()
+                            .putInt(PREF_ICON_WIDTH, iconWidth)
+                            .putInt(PREF_ICON_HEIGHT, iconHeight)
+                            .apply();
+                }
+            }
+            WearConnection connection = WearConnection.get(this);
+            GoogleApiClient client = connection.acquire();
+            if (client == null) {
+                return;
+            }
             try {
-                String urlIcon = Utility.getArtUrlForWeatherCondition(this, weatherId);
-                URL url = new URL(urlIcon);
-                bitmap = BitmapFactory.decodeStream(url.openConnection().getInputStream());
-            } catch (IOException e) {
-                e.printStackTrace();
-                bitmap = BitmapFactory.decodeResource(getResources(), Utility.getIconResourceForWeatherCondition(weatherId));
+                if (sendData(this, client, today, iconWidth, iconHeight)) {
+                    prefs.edit().putString(PREF_PUBLISHED_FORECAST, today.toString()).apply();
+                }
+            } finally {
+                connection.release();
             }
         }
-        Asset asset = createAssetFromBitmap(bitmap);
-        putDataMapRequest.getDataMap().putAsset("icon", asset);
-
-        PutDataRequest request = putDataMapRequest.asPutDataRequest();
-        Wearable.DataApi.putDataItem(mGoogleApiClient, request);
     }
 
+    /**
+     * Publishes the forecast of today for the preferred location to the watch, unless it's the
+     * one already published. Called by the sync adapter when it has stored new data: the watch
+     * finds it in its data layer without asking. Blocks, never to be called on the main thread.
+     */
+    public static void publishToday(Context context) {
+        TodayForecast today = queryToday(context);
+        if (today == null) {
+            return;
+        }
+        SharedPreferences prefs = context.getSharedPreferences(WEAR_PREFS, MODE_PRIVATE);
+        String published = today.toString();
+        if (published.equals(prefs.getString(PREF_PUBLISHED_FORECAST, null))) {
+            return;
+        }
 
-    private static Asset createAssetFromBitmap(Bitmap bitmap) {
-        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
-        return Asset.createFromBytes(byteStream.toByteArray());
+        WearConnection connection = WearConnection.get(context);
+        GoogleApiClient client = connection.acquire();
+        if (client == null) {
+            return;
+        }
+        try {
+            // published only once the watch has it all, otherwise the next sync tries again
+            if (sendData(context, client, today,
+                    prefs.getInt(PREF_ICON_WIDTH, WEAR_ICON_SIZE),
+                    prefs.getInt(PREF_ICON_HEIGHT, WEAR_ICON_SIZE))) {
+                prefs.edit().putString(PREF_PUBLISHED_FORECAST, published).apply();
+            }
+        } finally {
+            connection.release();
+        }
     }
 
+    /**
+     * @return the first forecast from today on of the preferred location, null if there's none
+     */
+    private static TodayForecast queryToday(Context context) {
+        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+        String locationSetting = Utility.getPreferredLocation(context);
+
+        // Through the provider, so that the forecast comes from its in-memory snapshot
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor c = context.getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS,
+                null, null, sortOrder);
+        if (c == null) {
+            return null;
+        }
+        try {
+            if (!c.moveToFirst()) {
+                return null;
+            }
+            SunshineSettings settings = SunshineSettings.get(context);
+            return new TodayForecast(c.getLong(COL_WEATHER_DATE),
+                    Utility.formatTemperature(context, c.getDouble(COL_WEATHER_MAX_TEMP)),
+                    Utility.formatTemperature(context, c.getDouble(COL_WEATHER_MIN_TEMP)),
+                    c.getInt(COL_WEATHER_CONDITION_ID),
+                    settings.localGraphics ? null : settings.artPackFormat);
+        } finally {
+            c.close();
+        }
+    }
 
+    /**
+     * Sends the temperatures as the "/weather-info" data item and, only when it's not the one
+     * already sent, the icon as the "/weather-icon" data item.
+     *
+     * @return true if the data layer has taken both
+     */
+    private static boolean sendData(Context context, GoogleApiClient client, TodayForecast today,
+                                    int iconWidth, int iconHeight){
+        Bitmap bitmap = ConditionArtCache.get(context).load(today.weatherId, ConditionArtCache.STYLE_ICON,
+                iconWidth, iconHeight);
+        return sSender.send(new DataApiLayer(client), today.date, today.tempMax, today.tempMin,
+                today.weatherId, bitmap);
+    }
 }
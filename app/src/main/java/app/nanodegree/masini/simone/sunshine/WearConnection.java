@@ -0,0 +1,97 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine
+ *
+ * The one connection of the app to the wear data layer, shared by the forecasts published by
+ * the sync and the answers to the watch.
+ *
+ * Users {@link #acquire()} the client and {@link #release()} it when done. The client stays
+ * connected while there's a user, and a little longer after the last one, so that a sync
+ * followed by a request of the watch connects once.
+ */
+final class WearConnection {
+
+    private static final String LOG_TAG = WearConnection.class.getSimpleName();
+
+    private static final long CONNECT_TIMEOUT_MS = 10 * 1000;
+    // How long the client stays connected after the last user is done with it
+    private static final long DISCONNECT_DELAY_MS = 60 * 1000;
+
+    private static WearConnection sInstance;
+
+    private final GoogleApiClient mClient;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Object mConnectLock = new Object();
+    private int mUsers;
+
+    private final Runnable mDisconnect = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (WearConnection.this) {
+                if (mUsers == 0) {
+                    mClient.disconnect();
+                }
+            }
+        }
+    };
+
+    private WearConnection(Context context) {
+        mClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build();
+    }
+
+    static synchronized WearConnection get(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearConnection(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Connects the client if it isn't already. Blocks, never to be called on the main thread.
+     * Every successful call has to be followed by a call to {@link #release()}.
+     *
+     * @return the connected client, null if it can't connect: no wear app on this phone, or no
+     * way to talk to it right now
+     */
+    GoogleApiClient acquire() {
+        synchronized (this) {
+            mUsers++;
+            mHandler.removeCallbacks(mDisconnect);
+        }
+        synchronized (mConnectLock) {
+            if (!mClient.isConnected()) {
+                ConnectionResult result = mClient.blockingConnect(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (!result.isSuccess()) {
+                    Log.d(LOG_TAG, "Can't connect to the wear data layer: " + result);
+                    release();
+                    return null;
+                }
+            }
+        }
+        return mClient;
+    }
+
+    /**
+     * Gives back the client got from {@link #acquire()}.
+     */
+    synchronized void release() {
+        if (--mUsers == 0) {
+            mHandler.postDelayed(mDisconnect, DISCONNECT_DELAY_MS);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine
+ *
+ * What {@link SunshineWearService} puts in the data layer for the watch: the forecast of today,
+ * the "/weather-info" data item, and its icon, the "/weather-icon" one.
+ *
+ * The icon is the heavy part of it. It's encoded once per image, the encoded icons being kept
+ * as long as their image is, and it's put again only when it differs from the last one put,
+ * by digest. Nothing counts as sent until the data layer has taken it.
+ *
+ * @param <I> the images of the icons: the bitmaps of ConditionArtCache, which hands out one
+ *            per art pack, condition and size
+ */
+abstract class WearForecastSender<I> {
+
+    /**
+     * The data layer of the watch: the Wearable DataApi, or a stand-in.
+     */
+    interface DataLayer {
+        /**
+         * Puts the "/weather-icon" data item, blocking.
+         *
+         * @return true if the data layer has taken it
+         */
+        boolean putIcon(byte[] icon, String digest);
+
+        /**
+         * Puts the "/weather-info" data item, blocking.
+         *
+         * @return true if the data layer has taken it
+         */
+        boolean putForecast(long date, String tempMax, String tempMin, int weatherId);
+    }
+
+    private static final class EncodedIcon {
+        final byte[] bytes;
+        final String digest;
+
+        EncodedIcon(byte[] bytes, String digest) {
+            this.bytes = bytes;
+            this.digest = digest;
+        }
+    }
+
+    // Guarded by itself
+    private final Map<I, EncodedIcon> mEncodedIcons = new WeakHashMap<I, EncodedIcon>();
+    // Digest of the icon last put, guarded by this
+    private String mSentIconDigest;
+
+    /**
+     * @return the image encoded for the watch
+     */
+    protected abstract byte[] encode(I image);
+
+    /**
+     * Puts the forecast and, only when it's not the one last put, its icon.
+     *
+     * @param image the icon of the forecast, null if there's none
+     * @return true if the data layer has taken both
+     */
+    boolean send(DataLayer dataLayer, long date, String tempMax, String tempMin, int weatherId,
+                 I image) {
+        boolean sent = true;
+        if (image != null) {
+            EncodedIcon icon = getEncodedIcon(image);
+            synchronized (this) {
+                if (!icon.digest.equals(mSentIconDigest)) {
+                    if (dataLayer.putIcon(icon.bytes, icon.digest)) {
+                        mSentIconDigest = icon.digest;
+                    } else {
+                        sent = false;
+                    }
+                }
+            }
+        }
+        return dataLayer.putForecast(date, tempMax, tempMin, weatherId) && sent;
+    }
+
+    private EncodedIcon getEncodedIcon(I image) {
+        synchronized (mEncodedIcons) {
+            EncodedIcon icon = mEncodedIcons.get(image);
+            if (icon != null) {
+                return icon;
+            }
+        }
+        byte[] bytes = encode(image);
+        EncodedIcon icon = new EncodedIcon(bytes, digest(bytes));
+        synchronized (mEncodedIcons) {
+            mEncodedIcons.put(image, icon);
+        }
+        return icon;
+    }
+
+    private static String digest(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0x0f, 16))
+                        .append(Character.forDigit(b & 0x0f, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // the length and a hash of the content are still a good enough identity
+            return bytes.length + "-" + Arrays.hashCode(bytes);
+        }
+    }
+}
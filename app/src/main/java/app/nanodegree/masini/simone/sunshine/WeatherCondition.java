@@ -0,0 +1,146 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import java.util.Arrays;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine
+ *
+ * What the app shows for an OpenWeatherMap condition id: icon, art, art pack slug, description
+ * and Muzei image. The conditions are kept in a table indexed by id, built once, so that
+ * {@link #forId(int)} is a single array access.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherCondition {
+
+    static final int MAX_CONDITION_ID = 999;
+
+    /**
+     * The condition of the ids OpenWeatherMap doesn't define.
+     */
+    public static final WeatherCondition UNKNOWN = new WeatherCondition(-1, -1, null, 0, null);
+
+    private static final WeatherCondition[] sConditions = buildTable();
+
+    /** Icon resource id, -1 if there's none */
+    public final int iconResource;
+    /** Art resource id, -1 if there's none */
+    public final int artResource;
+    /** Name of the art in an art pack (see R.string.pref_art_pack_key), null if there's none */
+    public final String artSlug;
+    /** Description string resource id, 0 if there's none */
+    public final int stringResource;
+    /** Url of the Muzei image, null if there's none */
+    public final String imageUrl;
+
+    private WeatherCondition(int iconResource, int artResource, String artSlug,
+                             int stringResource, String imageUrl) {
+        this.iconResource = iconResource;
+        this.artResource = artResource;
+        this.artSlug = artSlug;
+        this.stringResource = stringResource;
+        this.imageUrl = imageUrl;
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the condition of the id, {@link #UNKNOWN} if there's no such condition
+     */
+    public static WeatherCondition forId(int weatherId) {
+        if (weatherId < 0 || weatherId > MAX_CONDITION_ID) {
+            return UNKNOWN;
+        }
+        return sConditions[weatherId];
+    }
+
+    private static WeatherCondition[] buildTable() {
+        int[] icons = new int[MAX_CONDITION_ID + 1];
+        int[] arts = new int[MAX_CONDITION_ID + 1];
+        String[] slugs = new String[MAX_CONDITION_ID + 1];
+        String[] imageUrls = new String[MAX_CONDITION_ID + 1];
+        int[] strings = new int[MAX_CONDITION_ID + 1];
+        Arrays.fill(icons, -1);
+        Arrays.fill(arts, -1);
+
+        // Later ranges don't override earlier ones: 761 is fog, not storm
+        final String STORM_URL = "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        final String LIGHT_RAIN_URL = "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        final String RAIN_URL = "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        final String SNOW_URL = "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        final String FOG_URL = "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        final String DUST_URL = "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        final String CLEAR_URL = "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        final String LIGHT_CLOUDS_URL = "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        final String CLOUDS_URL = "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+
+        fillArt(icons, arts, slugs, imageUrls, 200, 232, R.drawable.ic_storm, R.drawable.art_storm, "storm", STORM_URL);
+        fillArt(icons, arts, slugs, imageUrls, 300, 321, R.drawable.ic_light_rain, R.drawable.art_light_rain, "light_rain", LIGHT_RAIN_URL);
+        fillArt(icons, arts, slugs, imageUrls, 500, 504, R.drawable.ic_rain, R.drawable.art_rain, "rain", RAIN_URL);
+        fillArt(icons, arts, slugs, imageUrls, 511, 511, R.drawable.ic_snow, R.drawable.art_snow, "snow", SNOW_URL);
+        fillArt(icons, arts, slugs, imageUrls, 520, 531, R.drawable.ic_rain, R.drawable.art_rain, "rain", RAIN_URL);
+        fillArt(icons, arts, slugs, imageUrls, 600, 622, R.drawable.ic_snow, R.drawable.art_snow, "snow", SNOW_URL);
+        fillArt(icons, arts, slugs, imageUrls, 701, 761, R.drawable.ic_fog, R.drawable.art_fog, "fog", FOG_URL);
+        fillArt(icons, arts, slugs, imageUrls, 781, 781, R.drawable.ic_storm, R.drawable.art_storm, "storm", DUST_URL);
+        fillArt(icons, arts, slugs, imageUrls, 800, 800, R.drawable.ic_clear, R.drawable.art_clear, "clear", CLEAR_URL);
+        fillArt(icons, arts, slugs, imageUrls, 801, 801, R.drawable.ic_light_clouds, R.drawable.art_light_clouds, "light_clouds", LIGHT_CLOUDS_URL);
+        fillArt(icons, arts, slugs, imageUrls, 802, 804, R.drawable.ic_cloudy, R.drawable.art_clouds, "clouds", CLOUDS_URL);
+
+        Arrays.fill(strings, 200, 233, R.string.condition_2xx);
+        Arrays.fill(strings, 300, 322, R.string.condition_3xx);
+        final int[][] STRINGS = {
+                {500, R.string.condition_500}, {501, R.string.condition_501},
+                {502, R.string.condition_502}, {503, R.string.condition_503},
+                {504, R.string.condition_504}, {511, R.string.condition_511},
+                {520, R.string.condition_520}, {531, R.string.condition_531},
+                {600, R.string.condition_600}, {601, R.string.condition_601},
+                {602, R.string.condition_602}, {611, R.string.condition_611},
+                {612, R.string.condition_612}, {615, R.string.condition_615},
+                {616, R.string.condition_616}, {620, R.string.condition_620},
+                {621, R.string.condition_621}, {622, R.string.condition_622},
+                {701, R.string.condition_701}, {711, R.string.condition_711},
+                {721, R.string.condition_721}, {731, R.string.condition_731},
+                {741, R.string.condition_741}, {751, R.string.condition_751},
+                {761, R.string.condition_761}, {762, R.string.condition_762},
+                {771, R.string.condition_771}, {781, R.string.condition_781},
+                {800, R.string.condition_800}, {801, R.string.condition_801},
+                {802, R.string.condition_802}, {803, R.string.condition_803},
+                {804, R.string.condition_804}, {900, R.string.condition_900},
+                {901, R.string.condition_901}, {902, R.string.condition_902},
+                {903, R.string.condition_903}, {904, R.string.condition_904},
+                {905, R.string.condition_905}, {906, R.string.condition_906},
+                {951, R.string.condition_951}, {952, R.string.condition_952},
+                {953, R.string.condition_953}, {954, R.string.condition_954},
+                {955, R.string.condition_955}, {956, R.string.condition_956},
+                {957, R.string.condition_957}, {958, R.string.condition_958},
+                {959, R.string.condition_959}, {960, R.string.condition_960},
+                {961, R.string.condition_961}, {962, R.string.condition_962}
+        };
+        for (int[] string : STRINGS) {
+            strings[string[0]] = string[1];
+        }
+
+        WeatherCondition[] conditions = new WeatherCondition[MAX_CONDITION_ID + 1];
+        for (int id = 0; id <= MAX_CONDITION_ID; id++) {
+            if (icons[id] == -1 && strings[id] == 0) {
+                conditions[id] = UNKNOWN;
+            } else {
+                conditions[id] = new WeatherCondition(icons[id], arts[id], slugs[id], strings[id], imageUrls[id]);
+            }
+        }
+        return conditions;
+    }
+
+    private static void fillArt(int[] icons, int[] arts, String[] slugs, String[] imageUrls,
+                                int fromId, int toId, int icon, int art, String slug, String imageUrl) {
+        for (int id = fromId; id <= toId; id++) {
+            if (icons[id] == -1) {
+                icons[id] = icon;
+                arts[id] = art;
+                slugs[id] = slug;
+                imageUrls[id] = imageUrl;
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package app.nanodegree.masini.simone.sunshine.data;
+
+import android.content.ContentValues;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine.data
+ *
+ * A batch of weather rows kept column by column in primitive arrays, which is what the sync
+ * adapter hands to the {@link WeatherProvider} fast write path
+ * (see {@link WeatherContract#METHOD_WRITE_FORECAST_BATCH}) instead of a ContentValues per day.
+ *
+ * Row i of the batch is made of the i-th element of every array, only the first
+ * {@link #size()} elements are meaningful. Descriptions are interned: a forecast only uses a
+ * handful of them, so each row keeps the index of its description in a small table.
+ *
+ * A batch is meant to be reused: {@link #clear()} empties it but keeps its arrays, so a batch
+ * that lives across syncs stops allocating once it has grown to the size of a forecast.
+ */
+public class ForecastBatch {
+
+    private static final String LOG_TAG = ForecastBatch.class.getSimpleName();
+
+    private static final String KEY_SIZE = "size";
+    private static final String KEY_LOCATION_IDS = "location_ids";
+    private static final String KEY_DATES = "dates";
+    private static final String KEY_WEATHER_IDS = "weather_ids";
+    private static final String KEY_DESCRIPTION_INDEXES = "description_indexes";
+    private static final String KEY_DESCRIPTIONS = "descriptions";
+    private static final String KEY_DESCRIPTION_COUNT = "description_count";
+    private static final String KEY_MIN_TEMPS = "min_temps";
+    private static final String KEY_MAX_TEMPS = "max_temps";
+    private static final String KEY_HUMIDITY = "humidity";
+    private static final String KEY_PRESSURE = "pressure";
+    private static final String KEY_WIND_SPEEDS = "wind_speeds";
+    private static final String KEY_DEGREES = "degrees";
+
+    int size;
+    long[] locationIds;
+    long[] dates;
+    int[] weatherIds;
+    int[] descriptionIndexes;
+    String[] descriptions;
+    int descriptionCount;
+    double[] minTemps;
+    double[] maxTemps;
+    int[] humidity;
+    double[] pressure;
+    double[] windSpeeds;
+    double[] degrees;
+
+    public ForecastBatch(int capacity) {
+        capacity = Math.max(capacity, 1);
+        locationIds = new long[capacity];
+        dates = new long[capacity];
+        weatherIds = new int[capacity];
+        descriptionIndexes = new int[capacity];
+        descriptions = new String[8];
+        minTemps = new double[capacity];
+        maxTemps = new double[capacity];
+        humidity = new int[capacity];
+        pressure = new double[capacity];
+        windSpeeds = new double[capacity];
+        degrees = new double[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Empties the batch, keeping the arrays for the next rows.
+     */
+    public void clear() {
+        size = 0;
+        Arrays.fill(descriptions, 0, descriptionCount, null);
+        descriptionCount = 0;
+    }
+
+    /**
+     * @return the description of the given row
+     */
+    public String getDescription(int row) {
+        return descriptions[descriptionIndexes[row]];
+    }
+
+    /**
+     * @return the index of the description in the description table, added if it's not there
+     */
+    private int internDescription(String description) {
+        for (int i = 0; i < descriptionCount; i++) {
+            if (description == null ? descriptions[i] == null : description.equals(descriptions[i])) {
+                return i;
+            }
+        }
+        if (descriptionCount == descriptions.length) {
+            descriptions = Arrays.copyOf(descriptions, descriptionCount * 2);
+        }
+        descriptions[descriptionCount] = description;
+        return descriptionCount++;
+    }
+
+    /**
+     * Appends a day to the batch.
+     */
+    public void add(long locationId, long date, int weatherId, String description,
+                    double minTemp, double maxTemp, int humidity, double pressure,
+                    double windSpeed, double degrees) {
+        ensureCapacity(size + 1);
+        this.locationIds[size] = locationId;
+        this.dates[size] = date;
+        this.weatherIds[size] = weatherId;
+        this.descriptionIndexes[size] = internDescription(description);
+        this.minTemps[size] = minTemp;
+        this.maxTemps[size] = maxTemp;
+        this.humidity[size] = humidity;
+        this.pressure[size] = pressure;
+        this.windSpeeds[size] = windSpeed;
+        this.degrees[size] = degrees;
+        size++;
+    }
+
+    /**
+     * Appends all the days of another batch to this one.
+     */
+    public void addAll(ForecastBatch other) {
+        ensureCapacity(size + other.size);
+        for (int i = 0; i < other.size; i++) {
+            descriptionIndexes[size + i] = internDescription(other.getDescription(i));
+        }
+        System.arraycopy(other.locationIds, 0, locationIds, size, other.size);
+        System.arraycopy(other.dates, 0, dates, size, other.size);
+        System.arraycopy(other.weatherIds, 0, weatherIds, size, other.size);
+        System.arraycopy(other.minTemps, 0, minTemps, size, other.size);
+        System.arraycopy(other.maxTemps, 0, maxTemps, size, other.size);
+        System.arraycopy(other.humidity, 0, humidity, size, other.size);
+        System.arraycopy(other.pressure, 0, pressure, size, other.size);
+        System.arraycopy(other.windSpeeds, 0, windSpeeds, size, other.size);
+        System.arraycopy(other.degrees, 0, degrees, size, other.size);
+        size += other.size;
+    }
+
+    /**
+     * Sets the location of every day in the batch, the location is usually known only once
+     * the whole forecast has been read.
+     */
+    public void setLocationId(long locationId) {
+        Arrays.fill(locationIds, 0, size, locationId);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= dates.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, dates.length * 2);
+        locationIds = Arrays.copyOf(locationIds, newCapacity);
+        dates = Arrays.copyOf(dates, newCapacity);
+        weatherIds = Arrays.copyOf(weatherIds, newCapacity);
+        descriptionIndexes = Arrays.copyOf(descriptionIndexes, newCapacity);
+        minTemps = Arrays.copyOf(minTemps, newCapacity);
+        maxTemps = Arrays.copyOf(maxTemps, newCapacity);
+        humidity = Arrays.copyOf(humidity, newCapacity);
+        pressure = Arrays.copyOf(pressure, newCapacity);
+        windSpeeds = Arrays.copyOf(windSpeeds, newCapacity);
+        degrees = Arrays.copyOf(degrees, newCapacity);
+    }
+
+    /**
+     * Wraps the batch in a Bundle, to be passed to
+     * {@link android.content.ContentResolver#call(android.net.Uri, String, String, Bundle)}.
+     * The arrays are not copied: inside the app process the Bundle is never parcelled.
+     */
+    public Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putInt(KEY_SIZE, size);
+        bundle.putLongArray(KEY_LOCATION_IDS, locationIds);
+        bundle.putLongArray(KEY_DATES, dates);
+        bundle.putIntArray(KEY_WEATHER_IDS, weatherIds);
+        bundle.putIntArray(KEY_DESCRIPTION_INDEXES, descriptionIndexes);
+        bundle.putStringArray(KEY_DESCRIPTIONS, descriptions);
+        bundle.putInt(KEY_DESCRIPTION_COUNT, descriptionCount);
+        bundle.putDoubleArray(KEY_MIN_TEMPS, minTemps);
+        bundle.putDoubleArray(KEY_MAX_TEMPS, maxTemps);
+        bundle.putIntArray(KEY_HUMIDITY, humidity);
+        bundle.putDoubleArray(KEY_PRESSURE, pressure);
+        bundle.putDoubleArray(KEY_WIND_SPEEDS, windSpeeds);
+        bundle.putDoubleArray(KEY_DEGREES, degrees);
+        return bundle;
+    }
+
+    static ForecastBatch fromBundle(Bundle bundle) {
+        ForecastBatch batch = new ForecastBatch(1);
+        batch.size = bundle.getInt(KEY_SIZE);
+        batch.locationIds = bundle.getLongArray(KEY_LOCATION_IDS);
+        batch.dates = bundle.getLongArray(KEY_DATES);
+        batch.weatherIds = bundle.getIntArray(KEY_WEATHER_IDS);
+        batch.descriptionIndexes = bundle.getIntArray(KEY_DESCRIPTION_INDEXES);
+        batch.descriptions = bundle.getStringArray(KEY_DESCRIPTIONS);
+        batch.descriptionCount = bundle.getInt(KEY_DESCRIPTION_COUNT);
+        batch.minTemps = bundle.getDoubleArray(KEY_MIN_TEMPS);
+        batch.maxTemps = bundle.getDoubleArray(KEY_MAX_TEMPS);
+        batch.humidity = bundle.getIntArray(KEY_HUMIDITY);
+        batch.pressure = bundle.getDoubleArray(KEY_PRESSURE);
+        batch.windSpeeds = bundle.getDoubleArray(KEY_WIND_SPEEDS);
+        batch.degrees = bundle.getDoubleArray(KEY_DEGREES);
+        return batch;
+    }
+
+    /**
+     * Builds a batch out of weather rows, every column of the weather table but _ID has to be
+     * there. A row that misses one is skipped, as the NOT NULL constraints of the table made
+     * the inserts of single rows do.
+     */
+    static ForecastBatch fromContentValues(ContentValues[] values) {
+        ForecastBatch batch = new ForecastBatch(values.length);
+        for (ContentValues value : values) {
+            Long locationId = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+            Long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            Integer weatherId = value.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+            String description = value.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC);
+            Double minTemp = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+            Double maxTemp = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+            Integer humidity = value.getAsInteger(WeatherContract.WeatherEntry.COLUMN_HUMIDITY);
+            Double pressure = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_PRESSURE);
+            Double windSpeed = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED);
+            Double degrees = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_DEGREES);
+            if (locationId == null || date == null || weatherId == null || description == null
+                    || minTemp == null || maxTemp == null || humidity == null || pressure == null
+                    || windSpeed == null || degrees == null) {
+                Log.w(LOG_TAG, "Skipping a weather row with missing columns: " + value);
+                continue;
+            }
+            batch.add(locationId, date, weatherId, description, minTemp, maxTemp,
+                    humidity, pressure, windSpeed, degrees);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,386 @@
+package app.nanodegree.masini.simone.sunshine.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.Arrays;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine.data
+ *
+ * An immutable copy of the weather rows of one location joined with the location row, sorted
+ * by date, as the {@link WeatherProvider} keeps it in memory to answer the forecast queries
+ * without going to SQLite.
+ *
+ * The rows are kept in primitive arrays, the cursors returned by
+ * {@link #newCursor(String[], long)} read straight from them.
+ */
+class ForecastSnapshot {
+
+    // The columns of the snapshot
+    private static final int WEATHER_ID = 0;
+    private static final int LOC_KEY = 1;
+    private static final int DATE = 2;
+    private static final int SHORT_DESC = 3;
+    private static final int WEATHER_CONDITION_ID = 4;
+    private static final int MIN_TEMP = 5;
+    private static final int MAX_TEMP = 6;
+    private static final int HUMIDITY = 7;
+    private static final int PRESSURE = 8;
+    private static final int WIND_SPEED = 9;
+    private static final int DEGREES = 10;
+    private static final int LOCATION_ID = 11;
+    private static final int LOCATION_SETTING = 12;
+    private static final int CITY_NAME = 13;
+    private static final int COORD_LAT = 14;
+    private static final int COORD_LONG = 15;
+    private static final int SYNC_STATUS = 16;
+    private static final int LAST_SYNC = 17;
+
+    //SELECT weather._id, location_id, date, short_desc, weather_id, min, max, humidity, pressure,
+    //wind, degrees, location._id, location_setting, city_name, coord_lat, coord_long,
+    //sync_status, last_sync FROM weather INNER JOIN location ON weather.location_id = location._id
+    //WHERE location.location_setting = ? ORDER BY date ASC
+    private static final String sSnapshotQuery =
+            "SELECT " + WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_PRESSURE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_DEGREES + ", " +
+                    WeatherContract.LocationEntry.TABLE_NAME + "." + WeatherContract.LocationEntry._ID + ", " +
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                    WeatherContract.LocationEntry.COLUMN_CITY_NAME + ", " +
+                    WeatherContract.LocationEntry.COLUMN_COORD_LAT + ", " +
+                    WeatherContract.LocationEntry.COLUMN_COORD_LONG + ", " +
+                    WeatherContract.LocationEntry.COLUMN_SYNC_STATUS + ", " +
+                    WeatherContract.LocationEntry.COLUMN_LAST_SYNC +
+                    " FROM " + WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
+                    WeatherContract.LocationEntry.TABLE_NAME +
+                    " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
+                    " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry._ID +
+                    " WHERE " + WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?" +
+                    " ORDER BY " + WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+    private final int mCount;
+    private final long[] mIds;
+    private final long[] mDates;
+    private final String[] mDescriptions;
+    private final int[] mWeatherIds;
+    private final double[] mMinTemps;
+    private final double[] mMaxTemps;
+    private final double[] mHumidity;
+    private final double[] mPressure;
+    private final double[] mWindSpeeds;
+    private final double[] mDegrees;
+
+    // The location columns are the same on every row
+    private final long mLocationId;
+    private final String mLocationSetting;
+    private final String mCityName;
+    private final double mCoordLat;
+    private final double mCoordLong;
+    private final int mSyncStatus;
+    private final long mLastSync;
+
+    private ForecastSnapshot(Cursor cursor) {
+        mCount = cursor.getCount();
+        mIds = new long[mCount];
+        mDates = new long[mCount];
+        mDescriptions = new String[mCount];
+        mWeatherIds = new int[mCount];
+        mMinTemps = new double[mCount];
+        mMaxTemps = new double[mCount];
+        mHumidity = new double[mCount];
+        mPressure = new double[mCount];
+        mWindSpeeds = new double[mCount];
+        mDegrees = new double[mCount];
+
+        for (int i = 0; cursor.moveToNext(); i++) {
+            mIds[i] = cursor.getLong(WEATHER_ID);
+            mDates[i] = cursor.getLong(DATE);
+            mDescriptions[i] = cursor.getString(SHORT_DESC);
+            mWeatherIds[i] = cursor.getInt(WEATHER_CONDITION_ID);
+            mMinTemps[i] = cursor.getDouble(MIN_TEMP);
+            mMaxTemps[i] = cursor.getDouble(MAX_TEMP);
+            mHumidity[i] = cursor.getDouble(HUMIDITY);
+            mPressure[i] = cursor.getDouble(PRESSURE);
+            mWindSpeeds[i] = cursor.getDouble(WIND_SPEED);
+            mDegrees[i] = cursor.getDouble(DEGREES);
+        }
+
+        if (cursor.moveToFirst()) {
+            mLocationId = cursor.getLong(LOCATION_ID);
+            mLocationSetting = cursor.getString(LOCATION_SETTING);
+            mCityName = cursor.getString(CITY_NAME);
+            mCoordLat = cursor.getDouble(COORD_LAT);
+            mCoordLong = cursor.getDouble(COORD_LONG);
+            mSyncStatus = cursor.getInt(SYNC_STATUS);
+            mLastSync = cursor.getLong(LAST_SYNC);
+        } else {
+            mLocationId = 0;
+            mLocationSetting = null;
+            mCityName = null;
+            mCoordLat = 0;
+            mCoordLong = 0;
+            mSyncStatus = 0;
+            mLastSync = 0;
+        }
+    }
+
+    /**
+     * Reads the snapshot of a location from the database.
+     */
+    static ForecastSnapshot load(SQLiteDatabase db, String locationSetting) {
+        Cursor cursor = db.rawQuery(sSnapshotQuery, new String[]{locationSetting});
+        try {
+            return new ForecastSnapshot(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the snapshot columns matching the projection, or null if a column of the
+     * projection is not a plain column of the snapshot (an expression, an alias...)
+     */
+    static int[] mapProjection(String[] projection) {
+        if (projection == null) {
+            return null;
+        }
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columns[i] = columnOf(projection[i]);
+            if (columns[i] < 0) {
+                return null;
+            }
+        }
+        return columns;
+    }
+
+    private static int columnOf(String name) {
+        String table = null;
+        int dot = name.indexOf('.');
+        if (dot >= 0) {
+            table = name.substring(0, dot);
+            name = name.substring(dot + 1);
+        }
+
+        if (WeatherContract.WeatherEntry._ID.equals(name)) {
+            // _id is in both tables, it must be qualified
+            if (WeatherContract.WeatherEntry.TABLE_NAME.equals(table)) return WEATHER_ID;
+            if (WeatherContract.LocationEntry.TABLE_NAME.equals(table)) return LOCATION_ID;
+            return -1;
+        }
+        if (table == null || WeatherContract.WeatherEntry.TABLE_NAME.equals(table)) {
+            if (WeatherContract.WeatherEntry.COLUMN_LOC_KEY.equals(name)) return LOC_KEY;
+            if (WeatherContract.WeatherEntry.COLUMN_DATE.equals(name)) return DATE;
+            if (WeatherContract.WeatherEntry.COLUMN_SHORT_DESC.equals(name)) return SHORT_DESC;
+            if (WeatherContract.WeatherEntry.COLUMN_WEATHER_ID.equals(name)) return WEATHER_CONDITION_ID;
+            if (WeatherContract.WeatherEntry.COLUMN_MIN_TEMP.equals(name)) return MIN_TEMP;
+            if (WeatherContract.WeatherEntry.COLUMN_MAX_TEMP.equals(name)) return MAX_TEMP;
+            if (WeatherContract.WeatherEntry.COLUMN_HUMIDITY.equals(name)) return HUMIDITY;
+            if (WeatherContract.WeatherEntry.COLUMN_PRESSURE.equals(name)) return PRESSURE;
+            if (WeatherContract.WeatherEntry.COLUMN_WIND_SPEED.equals(name)) return WIND_SPEED;
+            if (WeatherContract.WeatherEntry.COLUMN_DEGREES.equals(name)) return DEGREES;
+        }
+        if (table == null || WeatherContract.LocationEntry.TABLE_NAME.equals(table)) {
+            if (WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING.equals(name)) return LOCATION_SETTING;
+            if (WeatherContract.LocationEntry.COLUMN_CITY_NAME.equals(name)) return CITY_NAME;
+            if (WeatherContract.LocationEntry.COLUMN_COORD_LAT.equals(name)) return COORD_LAT;
+            if (WeatherContract.LocationEntry.COLUMN_COORD_LONG.equals(name)) return COORD_LONG;
+            if (WeatherContract.LocationEntry.COLUMN_SYNC_STATUS.equals(name)) return SYNC_STATUS;
+            if (WeatherContract.LocationEntry.COLUMN_LAST_SYNC.equals(name)) return LAST_SYNC;
+        }
+        return -1;
+    }
+
+    /**
+     * @param projection the projection of the query, every column must be known to
+     *                   {@link #mapProjection(String[])}
+     * @param startDate  the first date of the rows returned, 0 for all the rows
+     * @return a cursor over the rows dated from startDate on, sorted by date
+     */
+    Cursor newCursor(String[] projection, long startDate) {
+        return new SnapshotCursor(projection, mapProjection(projection), indexOfDate(startDate), mCount);
+    }
+
+    /**
+     * @return a cursor over the row of the given date, empty if there's no such row
+     */
+    Cursor newDayCursor(String[] projection, long date) {
+        int from = indexOfDate(date);
+        int to = from < mCount && mDates[from] == date ? from + 1 : from;
+        return new SnapshotCursor(projection, mapProjection(projection), from, to);
+    }
+
+    /**
+     * @return the index of the first row dated date or later
+     */
+    private int indexOfDate(long date) {
+        int index = Arrays.binarySearch(mDates, 0, mCount, date);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    /**
+     * A read only cursor over a range of rows of the snapshot.
+     */
+    private class SnapshotCursor extends AbstractCursor {
+        private final String[] mColumnNames;
+        private final int[] mColumns;
+        private final int mFrom;
+        private final int mTo;
+
+        SnapshotCursor(String[] projection, int[] columns, int from, int to) {
+            // Like SQLite, a qualified column is named without its table
+            mColumnNames = new String[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                mColumnNames[i] = projection[i].substring(projection[i].indexOf('.') + 1);
+            }
+            mColumns = columns;
+            mFrom = from;
+            mTo = Math.max(from, to);
+        }
+
+        @Override
+        public int getCount() {
+            return mTo - mFrom;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mColumnNames;
+        }
+
+        @Override
+        public int getType(int column) {
+            switch (mColumns[column]) {
+                case SHORT_DESC:
+                case LOCATION_SETTING:
+                case CITY_NAME:
+                    return getString(column) == null ? FIELD_TYPE_NULL : FIELD_TYPE_STRING;
+                case MIN_TEMP:
+                case MAX_TEMP:
+                case HUMIDITY:
+                case PRESSURE:
+                case WIND_SPEED:
+                case DEGREES:
+                case COORD_LAT:
+                case COORD_LONG:
+                    return FIELD_TYPE_FLOAT;
+                default:
+                    return FIELD_TYPE_INTEGER;
+            }
+        }
+
+        @Override
+        public String getString(int column) {
+            int row = mFrom + getPosition();
+            switch (mColumns[column]) {
+                case SHORT_DESC:
+                    return mDescriptions[row];
+                case LOCATION_SETTING:
+                    return mLocationSetting;
+                case CITY_NAME:
+                    return mCityName;
+                default:
+                    return getType(column) == FIELD_TYPE_FLOAT
+                            ? Double.toString(getDouble(column)) : Long.toString(getLong(column));
+            }
+        }
+
+        @Override
+        public long getLong(int column) {
+            int row = mFrom + getPosition();
+            switch (mColumns[column]) {
+                case WEATHER_ID:
+                    return mIds[row];
+                case LOC_KEY:
+                case LOCATION_ID:
+                    return mLocationId;
+                case DATE:
+                    return mDates[row];
+                case WEATHER_CONDITION_ID:
+                    return mWeatherIds[row];
+                case SYNC_STATUS:
+                    return mSyncStatus;
+                case LAST_SYNC:
+                    return mLastSync;
+                case SHORT_DESC:
+                case LOCATION_SETTING:
+                case CITY_NAME:
+                    // SQLite converts the text to a number the same way
+                    try {
+                        return Long.parseLong(getString(column));
+                    } catch (NumberFormatException | NullPointerException e) {
+                        return 0;
+                    }
+                default:
+                    return (long) getDouble(column);
+            }
+        }
+
+        @Override
+        public double getDouble(int column) {
+            int row = mFrom + getPosition();
+            switch (mColumns[column]) {
+                case MIN_TEMP:
+                    return mMinTemps[row];
+                case MAX_TEMP:
+                    return mMaxTemps[row];
+                case HUMIDITY:
+                    return mHumidity[row];
+                case PRESSURE:
+                    return mPressure[row];
+                case WIND_SPEED:
+                    return mWindSpeeds[row];
+                case DEGREES:
+                    return mDegrees[row];
+                case COORD_LAT:
+                    return mCoordLat;
+                case COORD_LONG:
+                    return mCoordLong;
+                case SHORT_DESC:
+                case LOCATION_SETTING:
+                case CITY_NAME:
+                    try {
+                        return Double.parseDouble(getString(column));
+                    } catch (NumberFormatException | NullPointerException e) {
+                        return 0;
+                    }
+                default:
+                    return getLong(column);
+            }
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return getType(column) == FIELD_TYPE_NULL;
+        }
+    }
+}
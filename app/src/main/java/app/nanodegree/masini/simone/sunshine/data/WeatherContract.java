@@ -45,6 +45,33 @@ public class WeatherContract {
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
 
+    // Provider call() writing a ForecastBatch (see ForecastBatch#toBundle()) in one transaction,
+    // the number of rows actually inserted or updated comes back under RESULT_CHANGED_ROWS.
+    public static final String METHOD_WRITE_FORECAST_BATCH = "write_forecast_batch";
+    public static final String RESULT_CHANGED_ROWS = "changed_rows";
+
+    // Extras of METHOD_WRITE_FORECAST_BATCH for a whole sync, written in the same transaction as
+    // the rows. The synced locations (EXTRA_LOCATION_SETTINGS) with their new sync status
+    // (EXTRA_SYNC_STATUSES) and last sync time (EXTRA_LAST_SYNCS, 0 keeps the stored one), and
+    // the city and coordinates of the ones that have a new forecast (EXTRA_CITY_NAMES, null for
+    // the others, EXTRA_COORD_LATS and EXTRA_COORD_LONGS), which are added when they're missing.
+    // The location ids of the batch rows are then indexes in these arrays. The weather rows
+    // dated on or before EXTRA_DELETE_BEFORE, when it's there, are deleted.
+    public static final String EXTRA_LOCATION_SETTINGS = "location_settings";
+    public static final String EXTRA_SYNC_STATUSES = "sync_statuses";
+    public static final String EXTRA_LAST_SYNCS = "last_syncs";
+    public static final String EXTRA_CITY_NAMES = "city_names";
+    public static final String EXTRA_COORD_LATS = "coord_lats";
+    public static final String EXTRA_COORD_LONGS = "coord_longs";
+    public static final String EXTRA_DELETE_BEFORE = "delete_before";
+
+    // Provider call() returning how many forecast queries have been answered from the in-memory
+    // snapshots (RESULT_SNAPSHOT_HITS) and how many had to read the database
+    // (RESULT_SNAPSHOT_MISSES), since the provider was created.
+    public static final String METHOD_GET_SNAPSHOT_STATS = "get_snapshot_stats";
+    public static final String RESULT_SNAPSHOT_HITS = "snapshot_hits";
+    public static final String RESULT_SNAPSHOT_MISSES = "snapshot_misses";
+
 
     /*public static long normalizeDate(long startDate) {
         // normalize the start date to the beginning of the (UTC) day
@@ -81,6 +108,14 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // Outcome of the last sync of this location, one of SunshineSyncAdapter.LocationStatus
+        public static final String COLUMN_SYNC_STATUS = "sync_status";
+
+        // When the forecast of this location was last downloaded from the server, in
+        // milliseconds since the epoch. 0 if it never was. An answer that the forecast hasn't
+        // changed leaves it alone, so that a sync that changed nothing writes nothing.
+        public static final String COLUMN_LAST_SYNC = "last_sync";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -126,6 +161,10 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Query parameters of the uri notified when weather rows change
+        public static final String PARAM_CHANGED_START_DATE = "changed_start";
+        public static final String PARAM_CHANGED_END_DATE = "changed_end";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -149,6 +188,17 @@ public class WeatherContract {
                     .appendPath(Long.toString(Utility.normalizeDate(date))).build();
         }
 
+        /**
+         * Uri used to notify a change of the weather rows of a location dated from startDate to
+         * endDate (both included). Observers of the weather uri of the location receive it
+         * through {@link android.database.ContentObserver#onChange(boolean, Uri)}.
+         */
+        public static Uri buildWeatherChangedRangeUri(String locationSetting, long startDate, long endDate) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_CHANGED_START_DATE, Long.toString(startDate))
+                    .appendQueryParameter(PARAM_CHANGED_END_DATE, Long.toString(endDate)).build();
+        }
+
         public static String getLocationSettingFromUri(Uri uri) {
             return uri.getPathSegments().get(1);
         }
@@ -157,6 +207,16 @@ public class WeatherContract {
             return Long.parseLong(uri.getPathSegments().get(2));
         }
 
+        public static long getChangedStartDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_CHANGED_START_DATE);
+            return dateString == null ? 0 : Long.parseLong(dateString);
+        }
+
+        public static long getChangedEndDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_CHANGED_END_DATE);
+            return dateString == null ? Long.MAX_VALUE : Long.parseLong(dateString);
+        }
+
         public static long getStartDateFromUri(Uri uri) {
             String dateString = uri.getQueryParameter(COLUMN_DATE);
             if (null != dateString && dateString.length() > 0)
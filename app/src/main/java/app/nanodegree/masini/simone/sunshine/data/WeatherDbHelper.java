@@ -19,21 +19,48 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import app.nanodegree.masini.simone.sunshine.R;
 import app.nanodegree.masini.simone.sunshine.data.WeatherContract.LocationEntry;
 import app.nanodegree.masini.simone.sunshine.data.WeatherContract.WeatherEntry;
 
 /**
  * Manages a local database for weather data.
+ *
+ * The database is read by the loaders, the widgets, Muzei and the wear service while the sync
+ * adapter writes to it. With write-ahead logging (on by default, see
+ * R.bool.weather_db_write_ahead_logging) each reader gets its own connection out of the pool
+ * and reads the last committed state, so it never waits for a sync transaction to end.
+ * Without it the pool holds a single connection and readers queue behind the writer.
+ *
+ * Every component of the app should go through {@link #getInstance(Context)}, so that they all
+ * share the same connection pool.
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 3;
 
     static final String DATABASE_NAME = "weather.db";
 
+    private static WeatherDbHelper sInstance;
+
+    /**
+     * @return the helper shared by the whole process
+     */
+    public static synchronized WeatherDbHelper getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WeatherDbHelper(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
     public WeatherDbHelper(Context context) {
+        this(context, context.getResources().getBoolean(R.bool.weather_db_write_ahead_logging));
+    }
+
+    public WeatherDbHelper(Context context, boolean writeAheadLogging) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(writeAheadLogging);
     }
 
     @Override
@@ -45,7 +72,10 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                // 3 is SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN
+                LocationEntry.COLUMN_SYNC_STATUS + " INTEGER NOT NULL DEFAULT 3, " +
+                LocationEntry.COLUMN_LAST_SYNC + " INTEGER NOT NULL DEFAULT 0" +
                 " );";
 
         final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
@@ -17,12 +17,28 @@ package app.nanodegree.masini.simone.sunshine.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.util.LongSparseArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import app.nanodegree.masini.simone.sunshine.Utility;
 
@@ -32,6 +48,19 @@ public class WeatherProvider extends ContentProvider {
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    // The forecast of each location as last read from the database, see getSnapshot().
+    // Every write in this process drops the ones it touched (all of them when it can't tell)
+    // and bumps the generation, so that a snapshot read while a write was committing is never
+    // kept.
+    private final Map<String, ForecastSnapshot> mSnapshots = new HashMap<String, ForecastSnapshot>();
+    private long mSnapshotGeneration;
+    private final AtomicLong mSnapshotHits = new AtomicLong();
+    private final AtomicLong mSnapshotMisses = new AtomicLong();
+
+    // The changes of the operations of the applyBatch() running on this thread, notified once
+    // its transaction is committed. Null outside of applyBatch().
+    private final ThreadLocal<ArrayList<Uri>> mBatchNotifications = new ThreadLocal<ArrayList<Uri>>();
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
@@ -74,6 +103,10 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
 
+        if (isSnapshotQuery(projection, sortOrder)) {
+            return getSnapshot(locationSetting).newCursor(projection, startDate);
+        }
+
         String[] selectionArgs;
         String selection;
 
@@ -100,6 +133,10 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
+        if (isSnapshotQuery(projection, sortOrder)) {
+            return getSnapshot(locationSetting).newDayCursor(projection, date);
+        }
+
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 sLocationSettingAndDaySelection,
@@ -110,6 +147,81 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    /**
+     * @return true if the query of a location forecast can be answered by its snapshot, that is
+     * when it only asks for plain columns sorted by date.
+     */
+    private static boolean isSnapshotQuery(String[] projection, String sortOrder) {
+        if (ForecastSnapshot.mapProjection(projection) == null) {
+            return false;
+        }
+        if (sortOrder == null) {
+            return true;
+        }
+        String order = sortOrder.trim();
+        return order.equalsIgnoreCase(WeatherContract.WeatherEntry.COLUMN_DATE)
+                || order.equalsIgnoreCase(WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    /**
+     * @return the snapshot of the forecast of a location, read from the database if there's
+     * none since the last write
+     */
+    private ForecastSnapshot getSnapshot(String locationSetting) {
+        long generation;
+        synchronized (mSnapshots) {
+            ForecastSnapshot snapshot = mSnapshots.get(locationSetting);
+            if (snapshot != null) {
+                mSnapshotHits.incrementAndGet();
+                return snapshot;
+            }
+            generation = mSnapshotGeneration;
+        }
+        mSnapshotMisses.incrementAndGet();
+
+        ForecastSnapshot snapshot = ForecastSnapshot.load(mOpenHelper.getReadableDatabase(), locationSetting);
+        synchronized (mSnapshots) {
+            if (generation == mSnapshotGeneration) {
+                mSnapshots.put(locationSetting, snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drops the snapshots, to be called once a write has been committed and before it's
+     * notified.
+     */
+    private void invalidateSnapshots() {
+        synchronized (mSnapshots) {
+            mSnapshots.clear();
+            mSnapshotGeneration++;
+        }
+    }
+
+    /**
+     * Drops the snapshots of the locations touched by a weather write and of the given other
+     * locations, all of them if a touched location is gone. Same timing as
+     * {@link #invalidateSnapshots()}.
+     */
+    private void invalidateSnapshots(SQLiteDatabase db, WeatherChanges changes,
+                                     Collection<String> locationSettings) {
+        String[] changedSettings = resolveLocationSettings(db, changes);
+        synchronized (mSnapshots) {
+            for (String locationSetting : changedSettings) {
+                if (locationSetting == null) {
+                    mSnapshots.clear();
+                    break;
+                }
+                mSnapshots.remove(locationSetting);
+            }
+            for (String locationSetting : locationSettings) {
+                mSnapshots.remove(locationSetting);
+            }
+            mSnapshotGeneration++;
+        }
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -141,7 +253,7 @@ public class WeatherProvider extends ContentProvider {
      */
     @Override
     public boolean onCreate() {
-        mOpenHelper = new WeatherDbHelper(getContext());
+        mOpenHelper = WeatherDbHelper.getInstance(getContext());
         return true;
     }
 
@@ -231,6 +343,7 @@ public class WeatherProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         Uri returnUri;
+        WeatherChanges weatherChanges = null;
 
         switch (match) {
             case WEATHER: {
@@ -240,6 +353,9 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                weatherChanges = new WeatherChanges();
+                weatherChanges.add(values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY),
+                        values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
                 break;
             }
             case LOCATION: {
@@ -253,7 +369,12 @@ public class WeatherProvider extends ContentProvider {
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        invalidateSnapshots();
+        if (weatherChanges != null) {
+            notifyWeatherChanges(db, weatherChanges);
+        } else {
+            notifyChange(returnUri);
+        }
         return returnUri;
     }
 
@@ -262,10 +383,12 @@ public class WeatherProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsDeleted;
+        WeatherChanges weatherChanges = null;
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
             case WEATHER:
+                weatherChanges = collectWeatherChanges(db, selection, selectionArgs);
                 rowsDeleted = db.delete(
                         WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
                 break;
@@ -278,7 +401,12 @@ public class WeatherProvider extends ContentProvider {
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            invalidateSnapshots();
+            if (weatherChanges != null) {
+                notifyWeatherChanges(db, weatherChanges);
+            } else {
+                notifyChange(uri);
+            }
         }
         return rowsDeleted;
     }
@@ -297,10 +425,12 @@ public class WeatherProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsUpdated;
+        WeatherChanges weatherChanges = null;
 
         switch (match) {
             case WEATHER:
                 normalizeDate(values);
+                weatherChanges = collectWeatherChanges(db, selection, selectionArgs);
                 rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
                         selectionArgs);
                 break;
@@ -312,35 +442,564 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            invalidateSnapshots();
+            if (weatherChanges != null) {
+                notifyWeatherChanges(db, weatherChanges);
+            } else {
+                notifyChange(uri);
+            }
         }
         return rowsUpdated;
     }
 
+    /**
+     * Upserts weather rows: each incoming row is compared with the stored one for the same
+     * location and date, and only new or different rows are written. Unchanged rows are left
+     * alone, so they keep their _ID.
+     *
+     * When something changed, the change is notified for each location on the narrowest uri
+     * (see {@link #notifyWeatherChanges(SQLiteDatabase, WeatherChanges)}), when nothing did no
+     * notification is sent at all.
+     *
+     * The rows are written by {@link #writeForecastBatch(ForecastBatch)}, the same path the
+     * sync adapter uses.
+     *
+     * @return the number of rows that have actually been inserted or updated
+     */
     @Override
     public int bulkInsert(Uri uri, ContentValues[] values) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
-                int returnCount = 0;
+                return writeForecastBatch(ForecastBatch.fromContentValues(values));
+            default:
+                return super.bulkInsert(uri, values);
+        }
+    }
+
+    //location_id = ? AND date = ?
+    private static final String sLocationKeyAndDaySelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_WRITE_FORECAST_BATCH.equals(method)) {
+            Bundle result = new Bundle();
+            ForecastBatch batch = ForecastBatch.fromBundle(extras);
+            result.putInt(WeatherContract.RESULT_CHANGED_ROWS,
+                    extras.containsKey(WeatherContract.EXTRA_LOCATION_SETTINGS)
+                            ? writeSync(batch, extras) : writeForecastBatch(batch));
+            return result;
+        }
+        if (WeatherContract.METHOD_GET_SNAPSHOT_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putLong(WeatherContract.RESULT_SNAPSHOT_HITS, mSnapshotHits.get());
+            result.putLong(WeatherContract.RESULT_SNAPSHOT_MISSES, mSnapshotMisses.get());
+            return result;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    //INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity,
+    //pressure, wind, degrees) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+    private static final String sInsertWeatherStatement =
+            "INSERT INTO " + WeatherContract.WeatherEntry.TABLE_NAME + " (" +
+                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_PRESSURE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_DEGREES +
+                    ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    //UPDATE weather SET short_desc = ?, weather_id = ?, min = ?, max = ?, humidity = ?,
+    //pressure = ?, wind = ?, degrees = ? WHERE location_id = ? AND date = ?
+    private static final String sUpdateWeatherStatement =
+            "UPDATE " + WeatherContract.WeatherEntry.TABLE_NAME + " SET " +
+                    WeatherContract.WeatherEntry.COLUMN_SHORT_DESC + " = ?, " +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + " = ?, " +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + " = ?, " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + " = ?, " +
+                    WeatherContract.WeatherEntry.COLUMN_HUMIDITY + " = ?, " +
+                    WeatherContract.WeatherEntry.COLUMN_PRESSURE + " = ?, " +
+                    WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + " = ?, " +
+                    WeatherContract.WeatherEntry.COLUMN_DEGREES + " = ? WHERE " +
+                    sLocationKeyAndDaySelection;
+
+    //SELECT date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees
+    //FROM weather WHERE location_id = ? AND date BETWEEN ? AND ? ORDER BY date
+    private static final String sStoredWeatherQuery =
+            "SELECT " + WeatherContract.WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_PRESSURE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_DEGREES +
+                    " FROM " + WeatherContract.WeatherEntry.TABLE_NAME +
+                    " WHERE " + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " BETWEEN ? AND ?" +
+                    " ORDER BY " + WeatherContract.WeatherEntry.COLUMN_DATE;
+
+    /**
+     * The upsert behind {@link #bulkInsert(Uri, ContentValues[])} and
+     * {@link WeatherContract#METHOD_WRITE_FORECAST_BATCH}: the values are bound straight from the
+     * batch arrays into an insert and an update statement compiled once for the whole
+     * transaction, and the stored rows are read once per location instead of once per row.
+     *
+     * @return the number of rows that have actually been inserted or updated
+     */
+    private int writeForecastBatch(ForecastBatch batch) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int returnCount;
+        WeatherChanges weatherChanges = new WeatherChanges();
+
+        // Immediate rather than exclusive: with write-ahead logging the readers on the other
+        // pool connections go on reading the last committed rows meanwhile.
+        db.beginTransactionNonExclusive();
+        try {
+            returnCount = writeWeatherRows(db, batch, batch.locationIds, weatherChanges);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (returnCount > 0) {
+            invalidateSnapshots(db, weatherChanges, Collections.<String>emptyList());
+            notifyWeatherChanges(db, weatherChanges);
+        }
+        return returnCount;
+    }
+
+    //location_setting = ?
+    private static final String sLocationSettingOnlySelection =
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
+
+    //location_setting = ? AND sync_status != ?
+    private static final String sLocationStatusChangedSelection =
+            sLocationSettingOnlySelection + "AND " +
+                    WeatherContract.LocationEntry.COLUMN_SYNC_STATUS + " != ? ";
+
+    //location_setting = ? AND (sync_status != ? OR last_sync != ?)
+    private static final String sLocationStatusOrSyncChangedSelection =
+            sLocationSettingOnlySelection + "AND (" +
+                    WeatherContract.LocationEntry.COLUMN_SYNC_STATUS + " != ? OR " +
+                    WeatherContract.LocationEntry.COLUMN_LAST_SYNC + " != ?) ";
+
+    /**
+     * Stores a whole sync in a single transaction, see the extras of
+     * {@link WeatherContract#METHOD_WRITE_FORECAST_BATCH}: the missing locations, the weather
+     * rows, the deletion of the past ones and the sync status of every location. Observers
+     * are notified once it's committed, and only then, so they never see half a sync.
+     *
+     * @return the number of weather rows that have actually been inserted or updated
+     */
+    private int writeSync(ForecastBatch batch, Bundle extras) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        String[] locationSettings = extras.getStringArray(WeatherContract.EXTRA_LOCATION_SETTINGS);
+        int[] statuses = extras.getIntArray(WeatherContract.EXTRA_SYNC_STATUSES);
+        long[] lastSyncs = extras.getLongArray(WeatherContract.EXTRA_LAST_SYNCS);
+        String[] cityNames = extras.getStringArray(WeatherContract.EXTRA_CITY_NAMES);
+        double[] lats = extras.getDoubleArray(WeatherContract.EXTRA_COORD_LATS);
+        double[] longs = extras.getDoubleArray(WeatherContract.EXTRA_COORD_LONGS);
+        int returnCount;
+        // the locations added, and the ones whose status or last sync changed: a new location
+        // may have a snapshot from before, empty
+        Set<String> locationsChanged = new LinkedHashSet<String>();
+        WeatherChanges weatherChanges = new WeatherChanges();
+
+        db.beginTransactionNonExclusive();
+        try {
+            // the ids of the locations with a new forecast, added when they're missing
+            long[] locationIds = new long[locationSettings.length];
+            for (int i = 0; i < locationSettings.length; i++) {
+                if (cityNames[i] == null) {
+                    continue;
+                }
+                Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                        new String[]{WeatherContract.LocationEntry._ID},
+                        sLocationSettingOnlySelection, new String[]{locationSettings[i]},
+                        null, null, null);
                 try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
-                        }
+                    if (cursor.moveToFirst()) {
+                        locationIds[i] = cursor.getLong(0);
+                    } else {
+                        ContentValues location = new ContentValues();
+                        location.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityNames[i]);
+                        location.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSettings[i]);
+                        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lats[i]);
+                        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, longs[i]);
+                        locationIds[i] = db.insertOrThrow(WeatherContract.LocationEntry.TABLE_NAME, null, location);
+                        locationsChanged.add(locationSettings[i]);
                     }
-                    db.setTransactionSuccessful();
                 } finally {
-                    db.endTransaction();
+                    cursor.close();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
-                return returnCount;
-            default:
-                return super.bulkInsert(uri, values);
+            }
+            // the batch belongs to the caller, the ids are resolved aside
+            long[] rowLocationIds = new long[batch.size];
+            for (int i = 0; i < batch.size; i++) {
+                rowLocationIds[i] = locationIds[(int) batch.locationIds[i]];
+            }
+
+            returnCount = writeWeatherRows(db, batch, rowLocationIds, weatherChanges);
+
+            if (extras.containsKey(WeatherContract.EXTRA_DELETE_BEFORE)) {
+                String selection = WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?";
+                String[] selectionArgs = new String[]{
+                        Long.toString(extras.getLong(WeatherContract.EXTRA_DELETE_BEFORE))};
+                WeatherChanges deleted = collectWeatherChanges(db, selection, selectionArgs);
+                if (db.delete(WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs) > 0) {
+                    weatherChanges.addAll(deleted);
+                }
+            }
+
+            // Only the statuses that differ are written, so that a sync that changed nothing
+            // doesn't wake anybody up. Locations the server never recognised have no row to
+            // hold their status.
+            ContentValues status = new ContentValues();
+            for (int i = 0; i < locationSettings.length; i++) {
+                status.clear();
+                status.put(WeatherContract.LocationEntry.COLUMN_SYNC_STATUS, statuses[i]);
+                int updated;
+                if (lastSyncs[i] != 0) {
+                    status.put(WeatherContract.LocationEntry.COLUMN_LAST_SYNC, lastSyncs[i]);
+                    updated = db.update(WeatherContract.LocationEntry.TABLE_NAME, status,
+                            sLocationStatusOrSyncChangedSelection, new String[]{locationSettings[i],
+                                    Integer.toString(statuses[i]), Long.toString(lastSyncs[i])});
+                } else {
+                    updated = db.update(WeatherContract.LocationEntry.TABLE_NAME, status,
+                            sLocationStatusChangedSelection, new String[]{locationSettings[i],
+                                    Integer.toString(statuses[i])});
+                }
+                if (updated > 0) {
+                    locationsChanged.add(locationSettings[i]);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (!locationsChanged.isEmpty() || weatherChanges.mDays.size() > 0) {
+            invalidateSnapshots(db, weatherChanges, locationsChanged);
+        }
+        notifyWeatherChanges(db, weatherChanges);
+        // the status is in every row of the forecast of the location, and of the days in it
+        for (String locationSetting : locationsChanged) {
+            notifyChange(WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting));
+        }
+        if (!locationsChanged.isEmpty()) {
+            notifyChange(WeatherContract.LocationEntry.CONTENT_URI);
+        }
+        return returnCount;
+    }
+
+    /**
+     * Writes the rows of the batch that are new or different, within the caller's transaction,
+     * and adds them to the changes. The batch is only read.
+     *
+     * @param locationIds the location id of each row of the batch
+     * @return the number of rows that have actually been inserted or updated
+     */
+    private static int writeWeatherRows(SQLiteDatabase db, ForecastBatch batch,
+                                        long[] locationIds, WeatherChanges weatherChanges) {
+        int returnCount = 0;
+        long[] dates = new long[batch.size];
+        SQLiteStatement insert = null;
+        SQLiteStatement update = null;
+        try {
+            insert = db.compileStatement(sInsertWeatherStatement);
+            update = db.compileStatement(sUpdateWeatherStatement);
+
+            int runStart = 0;
+            while (runStart < batch.size) {
+                // the rows of a location are handled together, they're usually contiguous
+                long locationId = locationIds[runStart];
+                int runEnd = runStart;
+                long runFirstDate = Long.MAX_VALUE;
+                long runLastDate = Long.MIN_VALUE;
+                while (runEnd < batch.size && locationIds[runEnd] == locationId) {
+                    long date = Utility.normalizeDate(batch.dates[runEnd]);
+                    dates[runEnd] = date;
+                    runFirstDate = Math.min(runFirstDate, date);
+                    runLastDate = Math.max(runLastDate, date);
+                    runEnd++;
+                }
+
+                StoredWeather stored = StoredWeather.load(db, locationId, runFirstDate, runLastDate);
+                for (int i = runStart; i < runEnd; i++) {
+                    int storedRow = stored.indexOf(dates[i]);
+                    if (storedRow < 0) {
+                        insert.bindLong(1, locationId);
+                        insert.bindLong(2, dates[i]);
+                        bindWeatherValues(insert, 3, batch, i);
+                        if (insert.executeInsert() == -1) {
+                            continue;
+                        }
+                    } else if (stored.isSameRow(storedRow, batch, i)) {
+                        continue;
+                    } else {
+                        // An update (rather than a replace) keeps the _ID of the row
+                        bindWeatherValues(update, 1, batch, i);
+                        update.bindLong(9, locationId);
+                        update.bindLong(10, dates[i]);
+                        if (update.executeUpdateDelete() == 0) {
+                            continue;
+                        }
+                    }
+                    returnCount++;
+                    weatherChanges.add(locationId, dates[i]);
+                }
+                runStart = runEnd;
+            }
+        } finally {
+            if (insert != null) insert.close();
+            if (update != null) update.close();
+        }
+        return returnCount;
+    }
+
+    /**
+     * The days touched by a write, grouped by location id.
+     */
+    private static class WeatherChanges {
+        // for each location: the first and the last changed date and the number of changed days
+        private final LongSparseArray<long[]> mDays = new LongSparseArray<long[]>();
+        // the setting of each location of mDays, see resolveLocationSettings()
+        private String[] mLocationSettings;
+
+        void add(long locationId, long date) {
+            long[] days = mDays.get(locationId);
+            if (days == null) {
+                mDays.put(locationId, new long[]{date, date, 1});
+            } else {
+                days[0] = Math.min(days[0], date);
+                days[1] = Math.max(days[1], date);
+                days[2]++;
+            }
+        }
+
+        void addAll(WeatherChanges other) {
+            for (int i = 0; i < other.mDays.size(); i++) {
+                long[] days = other.mDays.valueAt(i);
+                long locationId = other.mDays.keyAt(i);
+                long[] merged = mDays.get(locationId);
+                if (merged == null) {
+                    mDays.put(locationId, days.clone());
+                } else {
+                    merged[0] = Math.min(merged[0], days[0]);
+                    merged[1] = Math.max(merged[1], days[1]);
+                    merged[2] += days[2];
+                }
+            }
+        }
+    }
+
+    //SELECT location_id, date FROM weather WHERE <selection>
+    private static final String[] sWeatherChangesColumns = new String[]{
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+            WeatherContract.WeatherEntry.COLUMN_DATE};
+
+    /**
+     * @return the days matching the selection, to be read before they're updated or deleted
+     */
+    private static WeatherChanges collectWeatherChanges(
+            SQLiteDatabase db, String selection, String[] selectionArgs) {
+        WeatherChanges changes = new WeatherChanges();
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME, sWeatherChangesColumns,
+                selection, selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                changes.add(cursor.getLong(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return changes;
+    }
+
+    //location._id = ?
+    private static final String sLocationIdSelection = WeatherContract.LocationEntry._ID + " = ? ";
+
+    /**
+     * Notifies the weather changes on the narrowest uri of each location, so that only the
+     * observers of the touched location, or of the touched day, are woken up:
+     * weather/[location]/[date] when a single day changed, weather/[location] otherwise (with
+     * the changed range, see
+     * {@link WeatherContract.WeatherEntry#buildWeatherChangedRangeUri(String, long, long)}).
+     */
+    private void notifyWeatherChanges(SQLiteDatabase db, WeatherChanges changes) {
+        String[] locationSettings = resolveLocationSettings(db, changes);
+        for (int i = 0; i < changes.mDays.size(); i++) {
+            long[] days = changes.mDays.valueAt(i);
+            String locationSetting = locationSettings[i];
+
+            Uri changedUri;
+            if (locationSetting == null) {
+                // rows of a location that's gone, nobody can be looking at them on their own
+                changedUri = WeatherContract.WeatherEntry.CONTENT_URI;
+            } else if (days[2] == 1) {
+                changedUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        locationSetting, days[0]);
+            } else {
+                changedUri = WeatherContract.WeatherEntry.buildWeatherChangedRangeUri(
+                        locationSetting, days[0], days[1]);
+            }
+            notifyChange(changedUri);
+        }
+    }
+
+    /**
+     * @return the setting of each location of the changes, in the order of their ids, null for
+     * a location that's gone. Read from the database once per changes.
+     */
+    private static String[] resolveLocationSettings(SQLiteDatabase db, WeatherChanges changes) {
+        if (changes.mLocationSettings != null) {
+            return changes.mLocationSettings;
+        }
+        String[] locationSettings = new String[changes.mDays.size()];
+        for (int i = 0; i < locationSettings.length; i++) {
+            Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                    new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                    sLocationIdSelection, new String[]{Long.toString(changes.mDays.keyAt(i))},
+                    null, null, null);
+            try {
+                if (cursor.moveToFirst()) {
+                    locationSettings[i] = cursor.getString(0);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        changes.mLocationSettings = locationSettings;
+        return locationSettings;
+    }
+
+    /**
+     * Binds the eight value columns of a batch row, from short_desc to degrees, starting at
+     * the given bind index.
+     */
+    private static void bindWeatherValues(SQLiteStatement statement, int index,
+                                          ForecastBatch batch, int row) {
+        String description = batch.getDescription(row);
+        if (description == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, description);
+        }
+        statement.bindLong(index + 1, batch.weatherIds[row]);
+        statement.bindDouble(index + 2, batch.minTemps[row]);
+        statement.bindDouble(index + 3, batch.maxTemps[row]);
+        statement.bindLong(index + 4, batch.humidity[row]);
+        statement.bindDouble(index + 5, batch.pressure[row]);
+        statement.bindDouble(index + 6, batch.windSpeeds[row]);
+        statement.bindDouble(index + 7, batch.degrees[row]);
+    }
+
+    /**
+     * The weather rows stored for a location in a date range, sorted by date.
+     */
+    private static class StoredWeather {
+        private final ForecastBatch rows;
+
+        private StoredWeather(ForecastBatch rows) {
+            this.rows = rows;
+        }
+
+        static StoredWeather load(SQLiteDatabase db, long locationId, long firstDate, long lastDate) {
+            Cursor cursor = db.rawQuery(sStoredWeatherQuery, new String[]{
+                    Long.toString(locationId), Long.toString(firstDate), Long.toString(lastDate)});
+            try {
+                ForecastBatch rows = new ForecastBatch(cursor.getCount());
+                while (cursor.moveToNext()) {
+                    rows.add(locationId, cursor.getLong(0), cursor.getInt(2), cursor.getString(1),
+                            cursor.getDouble(3), cursor.getDouble(4), cursor.getInt(5),
+                            cursor.getDouble(6), cursor.getDouble(7), cursor.getDouble(8));
+                }
+                return new StoredWeather(rows);
+            } finally {
+                cursor.close();
+            }
+        }
+
+        /**
+         * @return the index of the stored row for the given date, or a negative value if
+         * there's none
+         */
+        int indexOf(long date) {
+            return Arrays.binarySearch(rows.dates, 0, rows.size, date);
+        }
+
+        boolean isSameRow(int storedRow, ForecastBatch batch, int row) {
+            String storedDescription = rows.getDescription(storedRow);
+            return (storedDescription == null ? batch.getDescription(row) == null
+                            : storedDescription.equals(batch.getDescription(row)))
+                    && rows.weatherIds[storedRow] == batch.weatherIds[row]
+                    && rows.minTemps[storedRow] == batch.minTemps[row]
+                    && rows.maxTemps[storedRow] == batch.maxTemps[row]
+                    && rows.humidity[storedRow] == batch.humidity[row]
+                    && rows.pressure[storedRow] == batch.pressure[row]
+                    && rows.windSpeeds[storedRow] == batch.windSpeeds[row]
+                    && rows.degrees[storedRow] == batch.degrees[row];
+        }
+    }
+
+    /**
+     * Notifies the observers of a change, or, within applyBatch(), once the batch is committed.
+     */
+    private void notifyChange(Uri uri) {
+        ArrayList<Uri> pending = mBatchNotifications.get();
+        if (pending != null) {
+            if (!pending.contains(uri)) {
+                pending.add(uri);
+            }
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Applies the whole batch in a single transaction, so that it's either committed as a
+     * whole or not at all. The observers are notified after the commit, so that they read
+     * the new rows when they query again, and not at all when the batch fails.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        boolean outermost = mBatchNotifications.get() == null;
+        if (outermost) {
+            mBatchNotifications.set(new ArrayList<Uri>());
+        }
+        boolean committed = false;
+        db.beginTransactionNonExclusive();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            committed = true;
+            return results;
+        } finally {
+            db.endTransaction();
+            // the operations dropped the snapshots before the commit, they may have been
+            // read again meanwhile
+            invalidateSnapshots();
+            if (outermost) {
+                ArrayList<Uri> pending = mBatchNotifications.get();
+                mBatchNotifications.remove();
+                if (committed) {
+                    for (Uri uri : pending) {
+                        getContext().getContentResolver().notifyChange(uri, null);
+                    }
+                }
+            }
         }
     }
 
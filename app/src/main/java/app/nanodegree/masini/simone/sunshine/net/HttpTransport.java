@@ -0,0 +1,44 @@
+package app.nanodegree.masini.simone.sunshine.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine.net
+ *
+ * The way Sunshine talks HTTP. Every outbound fetch (forecast sync, and the weather art that
+ * ConditionArtCache downloads for the list, the detail view, the widgets, the notification and
+ * the wear service) goes through the transport returned by {@link SunshineHttp#getTransport()},
+ * so that connections, timeouts and compression are handled in a single place.
+ */
+public interface HttpTransport {
+
+    /**
+     * Performs a GET request.
+     *
+     * @param url the url to fetch
+     * @param requestHeaders additional request headers, may be null
+     * @return the response, which must be closed once the body has been consumed
+     */
+    Response get(String url, Map<String, String> requestHeaders) throws IOException;
+
+    interface Response extends Closeable {
+        /**
+         * @return the HTTP status code of the response
+         */
+        int getCode() throws IOException;
+
+        /**
+         * @return the value of the given response header, or null if it's missing
+         */
+        String getHeader(String name);
+
+        /**
+         * @return the decoded (i.e. already decompressed) response body
+         */
+        InputStream getBody() throws IOException;
+    }
+}
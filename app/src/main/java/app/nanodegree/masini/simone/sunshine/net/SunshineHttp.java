@@ -0,0 +1,36 @@
+package app.nanodegree.masini.simone.sunshine.net;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine.net
+ *
+ * Holder of the app-wide {@link HttpTransport}.
+ */
+public class SunshineHttp {
+
+    private static volatile HttpTransport sTransport;
+
+    private SunshineHttp() {
+    }
+
+    public static HttpTransport getTransport() {
+        HttpTransport transport = sTransport;
+        if (transport == null) {
+            synchronized (SunshineHttp.class) {
+                transport = sTransport;
+                if (transport == null) {
+                    transport = new UrlConnectionTransport();
+                    sTransport = transport;
+                }
+            }
+        }
+        return transport;
+    }
+
+    /**
+     * Replaces the transport used by the whole app, e.g. with one pointing to a stand-in server.
+     */
+    public static void setTransport(HttpTransport transport) {
+        sTransport = transport;
+    }
+}
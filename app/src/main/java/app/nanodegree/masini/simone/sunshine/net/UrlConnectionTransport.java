@@ -0,0 +1,98 @@
+package app.nanodegree.masini.simone.sunshine.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine.net
+ *
+ * {@link HttpTransport} on top of {@link HttpURLConnection}.
+ *
+ * HttpURLConnection keeps a pool of keep-alive connections per host (up to five idle ones, the
+ * platform defaults, left as they are since they're process-wide), but a connection only
+ * goes back to the pool if its body is read to the end and closed, and only if nobody calls
+ * {@link HttpURLConnection#disconnect()} on it. Responses from this transport take care of
+ * both when they're closed.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+    private static final int CONNECT_TIMEOUT_MS = 15 * 1000;
+    private static final int READ_TIMEOUT_MS = 20 * 1000;
+
+    @Override
+    public Response get(String url, Map<String, String> requestHeaders) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("GET");
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        // Asking for gzip explicitly turns off the transparent decompression of
+        // HttpURLConnection, the body is inflated in ConnectionResponse#getBody()
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        connection.connect();
+        return new ConnectionResponse(connection);
+    }
+
+    private static class ConnectionResponse implements Response {
+        private final HttpURLConnection mConnection;
+        private InputStream mRawBody;
+        private InputStream mBody;
+
+        ConnectionResponse(HttpURLConnection connection) {
+            mConnection = connection;
+        }
+
+        @Override
+        public int getCode() throws IOException {
+            return mConnection.getResponseCode();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (mBody == null) {
+                mRawBody = mConnection.getInputStream();
+                if ("gzip".equalsIgnoreCase(mConnection.getContentEncoding())) {
+                    mBody = new GZIPInputStream(mRawBody);
+                } else {
+                    mBody = mRawBody;
+                }
+            }
+            return mBody;
+        }
+
+        @Override
+        public void close() throws IOException {
+            InputStream rawBody = mRawBody;
+            if (rawBody == null) {
+                // The body was never asked for (e.g. a 304), the error stream, if any, has to be
+                // consumed instead to let the connection be reused.
+                rawBody = mConnection.getErrorStream();
+            }
+            if (rawBody == null) {
+                return;
+            }
+            try {
+                byte[] skipBuffer = new byte[1024];
+                while (rawBody.read(skipBuffer) != -1) {
+                    // drain what's left, so the connection goes back to the pool
+                }
+            } finally {
+                rawBody.close();
+            }
+        }
+    }
+}
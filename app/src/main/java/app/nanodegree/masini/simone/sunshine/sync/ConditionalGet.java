@@ -0,0 +1,181 @@
+package app.nanodegree.masini.simone.sunshine.sync;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import app.nanodegree.masini.simone.sunshine.net.HttpTransport;
+import app.nanodegree.masini.simone.sunshine.net.SunshineHttp;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine.sync
+ *
+ * The GET of a forecast that's stored once it's read, through {@link SunshineHttp}.
+ *
+ * The HTTP validators of the forecast last stored for a location are sent along, so that the
+ * server answers 304 when it hasn't changed, and the body is hashed while it's read, so that
+ * an unchanged forecast sent without validators is recognised as well. Either way there's
+ * nothing to parse again, store or notify.
+ *
+ * The validators are kept per location in their own preferences file, and are only good for
+ * the day they were stored on: the rows are dated from the sync day, so the same body received
+ * tomorrow must be stored again. They become those of a new response only once it's been
+ * stored, see {@link #commit(SharedPreferences.Editor)}.
+ */
+final class ConditionalGet {
+
+    /**
+     * Reads the body of a response whose forecast isn't stored yet.
+     */
+    interface BodyReader {
+        void read(InputStream body) throws IOException;
+    }
+
+    // What get() found
+    /** The server answered 304 to the validators of the stored forecast */
+    static final int NOT_MODIFIED = 0;
+    /** The body is the same as the one of the stored forecast */
+    static final int UNCHANGED = 1;
+    /** A new body, read by the BodyReader */
+    static final int READ = 2;
+    /** A response without a body */
+    static final int NO_BODY = 3;
+
+    private static final String LOG_TAG = ConditionalGet.class.getSimpleName();
+
+    static final String PREFS_NAME = "sync_validators";
+    private static final String VALIDATOR_DAY = "day-";
+    private static final String VALIDATOR_ETAG = "etag-";
+    private static final String VALIDATOR_LAST_MODIFIED = "last-modified-";
+    private static final String VALIDATOR_BODY_HASH = "body-hash-";
+
+    private final SharedPreferences mValidators;
+    private final String mLocationSetting;
+    private final int mDay;
+
+    // The validators of the response read by get()
+    private String mEtag;
+    private String mLastModified;
+    private String mBodyHash;
+
+    /**
+     * @param validators the preferences file {@link #PREFS_NAME}
+     * @param day the epoch day of the sync, the one the rows are dated from
+     */
+    ConditionalGet(SharedPreferences validators, String locationSetting, int day) {
+        mValidators = validators;
+        mLocationSetting = locationSetting;
+        mDay = day;
+    }
+
+    /**
+     * Sends the request, on the calling thread.
+     *
+     * @return {@link #NOT_MODIFIED}, {@link #UNCHANGED}, {@link #READ} or {@link #NO_BODY}
+     */
+    int get(String url, BodyReader reader) throws IOException {
+        String lastEtag = null;
+        String lastModified = null;
+        String lastBodyHash = null;
+        if (mValidators.getInt(VALIDATOR_DAY + mLocationSetting, -1) == mDay) {
+            lastEtag = mValidators.getString(VALIDATOR_ETAG + mLocationSetting, null);
+            lastModified = mValidators.getString(VALIDATOR_LAST_MODIFIED + mLocationSetting, null);
+            lastBodyHash = mValidators.getString(VALIDATOR_BODY_HASH + mLocationSetting, null);
+        }
+        Map<String, String> requestHeaders = new HashMap<String, String>();
+        if (lastEtag != null) {
+            requestHeaders.put("If-None-Match", lastEtag);
+        }
+        if (lastModified != null) {
+            requestHeaders.put("If-Modified-Since", lastModified);
+        }
+
+        HttpTransport.Response response = SunshineHttp.getTransport().get(url, requestHeaders);
+        try {
+            if (response.getCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return NOT_MODIFIED;
+            }
+            InputStream body = response.getBody();
+            if (body == null) {
+                return NO_BODY;
+            }
+
+            MessageDigest bodyDigest = newBodyDigest();
+            if (bodyDigest != null) {
+                body = new DigestInputStream(body, bodyDigest);
+            }
+            reader.read(body);
+            if (bodyDigest != null) {
+                // Let the digest see whatever the reader didn't need (trailing whitespace)
+                byte[] skipBuffer = new byte[256];
+                while (body.read(skipBuffer) != -1) {
+                    // keep draining
+                }
+                mBodyHash = toHex(bodyDigest.digest());
+            }
+            if (mBodyHash != null && mBodyHash.equals(lastBodyHash)) {
+                return UNCHANGED;
+            }
+
+            mEtag = response.getHeader("ETag");
+            mLastModified = response.getHeader("Last-Modified");
+            return READ;
+        } finally {
+            // Closing the response (rather than disconnecting) lets the connection be reused
+            try {
+                response.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error closing stream", e);
+            }
+        }
+    }
+
+    /**
+     * Keeps the validators of the response read, once its forecast has been stored: the next
+     * get() of the location, the same day, is answered 304 or recognised as unchanged.
+     */
+    void commit(SharedPreferences.Editor validators) {
+        validators.putInt(VALIDATOR_DAY + mLocationSetting, mDay)
+                .putString(VALIDATOR_ETAG + mLocationSetting, mEtag)
+                .putString(VALIDATOR_LAST_MODIFIED + mLocationSetting, mLastModified)
+                .putString(VALIDATOR_BODY_HASH + mLocationSetting, mBodyHash);
+    }
+
+    /**
+     * Forgets the validators of the location, when the forecast read couldn't be stored: they
+     * no longer match what is, and the next get() has to read the forecast again.
+     */
+    void drop(SharedPreferences.Editor validators) {
+        validators.remove(VALIDATOR_DAY + mLocationSetting)
+                .remove(VALIDATOR_ETAG + mLocationSetting)
+                .remove(VALIDATOR_LAST_MODIFIED + mLocationSetting)
+                .remove(VALIDATOR_BODY_HASH + mLocationSetting);
+    }
+
+    private static MessageDigest newBodyDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+}
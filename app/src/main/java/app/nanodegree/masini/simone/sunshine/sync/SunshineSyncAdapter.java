@@ -9,8 +9,6 @@ import android.app.TaskStackBuilder;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
 import android.content.ContentResolver;
-import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
@@ -18,39 +16,44 @@ import android.content.SyncRequest;
 import android.content.SyncResult;
 import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
-import android.text.format.Time;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
-
-import com.bumptech.glide.Glide;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import android.util.MalformedJsonException;
 
 import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import app.nanodegree.masini.simone.sunshine.ConditionArtCache;
 import app.nanodegree.masini.simone.sunshine.MainActivity;
 import app.nanodegree.masini.simone.sunshine.R;
+import app.nanodegree.masini.simone.sunshine.SunshineWearService;
 import app.nanodegree.masini.simone.sunshine.Utility;
+import app.nanodegree.masini.simone.sunshine.data.ForecastBatch;
 import app.nanodegree.masini.simone.sunshine.data.WeatherContract;
 import app.nanodegree.masini.simone.sunshine.muzei.WeatherMuzeiSource;
+import app.nanodegree.masini.simone.sunshine.shared.DayClock;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
@@ -62,6 +65,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
+    // How many locations are downloaded at the same time
+    private static final int MAX_SYNC_WORKERS = 4;
+
     private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
@@ -91,6 +97,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
 
 
+    // The day batches, one per synced location, and the batch they're merged in to be stored.
+    // They live as long as the adapter, so a sync reuses the arrays grown by the previous one.
+    private final List<ForecastBatch> mDayBatches = new ArrayList<ForecastBatch>();
+    private final ForecastBatch mWeatherBatch = new ForecastBatch(14);
+
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
     }
@@ -98,15 +109,105 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "onPerformSync Called.");
-        String locationQuery = Utility.getPreferredLocation(getContext());
+        String preferredLocation = Utility.getPreferredLocation(getContext());
+        List<String> locations = Utility.getSyncLocations(getContext());
+
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, which means that we need to know the GMT offset to translate this data
+        // properly.
+
+        // Since this data is also sent in-order and the first day is always the
+        // current day, we're going to take advantage of that to get a nice
+        // normalized UTC date for all of our weather.
+        // we start at the day returned by local time. Otherwise this is a mess.
+        final int startDay = DayClock.getDefault().getEpochDay(System.currentTimeMillis());
+
+        // Download and parse every location on a bounded pool of workers, the results are
+        // then stored all together.
+        List<Forecast> forecasts = new ArrayList<Forecast>(locations.size());
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(locations.size(), MAX_SYNC_WORKERS));
+        try {
+            List<Future<Forecast>> pending = new ArrayList<Future<Forecast>>(locations.size());
+            for (int i = 0; i < locations.size(); i++) {
+                if (mDayBatches.size() == i) {
+                    mDayBatches.add(new ForecastBatch(14));
+                }
+                final String location = locations.get(i);
+                final ForecastBatch days = mDayBatches.get(i);
+                days.clear();
+                pending.add(workers.submit(new Callable<Forecast>() {
+                    @Override
+                    public Forecast call() {
+                        return fetchForecast(location, startDay, days);
+                    }
+                }));
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                try {
+                    forecasts.add(pending.get(i).get());
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Error syncing " + locations.get(i), e.getCause());
+                    Forecast failed = new Forecast(locations.get(i), mDayBatches.get(i));
+                    failed.status = LOCATION_STATUS_SERVER_DOWN;
+                    forecasts.add(failed);
+                }
+            }
+        } catch (InterruptedException e) {
+            // The sync has been cancelled, what hasn't been stored will be fetched next time
+            Log.d(LOG_TAG, "Sync interrupted");
+            // workers still running may keep filling their batches, don't hand them to the
+            // next sync
+            mDayBatches.clear();
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            workers.shutdownNow();
+        }
+
+        storeWeatherData(forecasts, preferredLocation, startDay);
+    }
 
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-        String forecastJsonStr = null;
+    /**
+     * The forecast of one location as read from OpenWeatherMap, before it's stored.
+     */
+    private static class Forecast {
+        final String locationSetting;
+        @LocationStatus int status = LOCATION_STATUS_UNKNOWN;
+        // true when the days below have to be stored, false when what's stored is still current
+        boolean modified;
+
+        int errorCode = HttpURLConnection.HTTP_OK;
+        String cityName;
+        double cityLatitude;
+        double cityLongitude;
+        boolean hasCoord;
+        boolean hasList;
+        final ForecastBatch days;
+
+        // The request, which keeps the HTTP validators of the response
+        ConditionalGet request;
+
+        Forecast(String locationSetting, ForecastBatch days) {
+            this.locationSetting = locationSetting;
+            this.days = days;
+        }
+    }
+
+    /**
+     * Downloads and parses the forecast of one location. Runs on the sync workers, so it
+     * doesn't touch the database.
+     */
+    private Forecast fetchForecast(String locationQuery, final int startDay, ForecastBatch days) {
+        final Forecast forecast = new Forecast(locationQuery, days);
         String format = "json";
         String units = "metric";
         int numDays = 14;
 
+        // Kept in their own preferences file so that saving them doesn't wake up the settings
+        // listeners
+        forecast.request = new ConditionalGet(getContext().getSharedPreferences(
+                ConditionalGet.PREFS_NAME, Context.MODE_PRIVATE), locationQuery, startDay);
+
         try {
 
             // Construct the URL for the OpenWeatherMap query
@@ -126,76 +227,78 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
                     .appendQueryParameter(API_KEY_PARAMS, getContext().getString(R.string.open_weather_api_key))
                     .build();
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
 
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
+            // Send the request to OpenWeatherMap through the shared transport
+            int result = forecast.request.get(builtUri.toString(), new ConditionalGet.BodyReader() {
+                @Override
+                public void read(InputStream body) throws IOException {
+                    // The body is parsed straight off the wire: neither the whole response
+                    // string nor a JSON object tree is ever built.
+                    JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(body, "UTF-8")));
+                    getWeatherDataFromJson(reader, startDay, forecast);
+                }
+            });
+            switch (result) {
+                case ConditionalGet.NOT_MODIFIED:
+                    // What we stored today is still current: nothing to parse, store or notify.
+                    Log.d(LOG_TAG, "Forecast not modified for " + locationQuery);
+                    forecast.status = LOCATION_STATUS_OK;
+                    return forecast;
+                case ConditionalGet.UNCHANGED:
+                    // Same bytes as the forecast already stored today, skip every write stage.
+                    Log.d(LOG_TAG, "Forecast unchanged for " + locationQuery);
+                    forecast.status = LOCATION_STATUS_OK;
+                    return forecast;
+                case ConditionalGet.NO_BODY:
+                    // Nothing to do.
+                    return forecast;
             }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-            String line;
-
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+
+            switch (forecast.errorCode) {
+                case HttpURLConnection.HTTP_OK:
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    forecast.status = LOCATION_STATUS_SERVER_INVALID;
+                    return forecast;
+                default:
+                    forecast.status = LOCATION_STATUS_SERVER_DOWN;
+                    return forecast;
             }
 
-            if (buffer.length() == 0) {
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+            if (forecast.cityName == null || !forecast.hasCoord || !forecast.hasList) {
+                // A successful answer always carries the city and the days, anything else is
+                // not a forecast
+                forecast.status = LOCATION_STATUS_SERVER_INVALID;
+                return forecast;
             }
 
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
+            forecast.modified = true;
+            forecast.status = LOCATION_STATUS_OK;
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            forecast.status = LOCATION_STATUS_SERVER_INVALID;
+        } catch (EOFException e) {
+            // An empty (or truncated) body, the server did not answer properly.
+            Log.e(LOG_TAG, "Error ", e);
+            forecast.status = LOCATION_STATUS_SERVER_DOWN;
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
             // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
-            }
+            forecast.status = LOCATION_STATUS_SERVER_DOWN;
         }
-        return;
+        return forecast;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
+     * Pull the data we need out of the forecast JSON while it is being read from the network.
      *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * Only the fields that end up in the database are kept: "city", its "coord" and the
+     * ten values of each element of the "list" array, which go straight into insert-ready rows.
+     * Everything else is skipped without being materialised.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
+    private void getWeatherDataFromJson(JsonReader reader, int startDay, Forecast forecast)
+            throws IOException {
 
         // These are the names of the JSON objects that need to be extracted.
 
@@ -211,150 +314,270 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         // Weather information.  Each day's forecast info is an element of the "list" array.
         final String OWM_LIST = "list";
 
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-
         final String OWN_MESSAGE_CODE = "cod";
 
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            if(forecastJson.has(OWN_MESSAGE_CODE)){
-                int errorCode = forecastJson.getInt(OWN_MESSAGE_CODE);
-
-                switch (errorCode){
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
+        // Each element is a day: its rows are dated at the local start of the day
+        DayClock clock = DayClock.getDefault();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWN_MESSAGE_CODE.equals(name)) {
+                // "cod" is sent as a string by the forecast endpoint, nextInt() copes with both
+                forecast.errorCode = reader.nextInt();
+            } else if (OWM_CITY.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String cityField = reader.nextName();
+                    if (OWM_CITY_NAME.equals(cityField)) {
+                        forecast.cityName = reader.nextString();
+                    } else if (OWM_COORD.equals(cityField)) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String coordField = reader.nextName();
+                            if (OWM_LATITUDE.equals(coordField)) {
+                                forecast.cityLatitude = reader.nextDouble();
+                            } else if (OWM_LONGITUDE.equals(coordField)) {
+                                forecast.cityLongitude = reader.nextDouble();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        forecast.hasCoord = true;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_LIST.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                for (int i = 0; reader.hasNext(); i++) {
+                    long dateTime = clock.getStartOfDay(startDay + i);
+                    readDayForecast(reader, dateTime, forecast.days);
                 }
+                reader.endArray();
+                forecast.hasList = true;
+            } else {
+                reader.skipValue();
             }
+        }
+        reader.endObject();
+    }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
+    /**
+     * Store the forecasts read by {@link #fetchForecast(String, int, ForecastBatch)}, the status and
+     * freshness of each location, and let everybody know about it.
+     *
+     * The whole sync is a single {@link ForecastBatch} write, that is a single provider
+     * transaction: the new locations, the weather rows of every location, the deletion of the
+     * past days and the location statuses are committed together or not at all.
+     */
+    private void storeWeatherData(List<Forecast> forecasts, String preferredLocation, int startDay) {
+        ContentResolver resolver = getContext().getContentResolver();
+        long now = System.currentTimeMillis();
+
+        ForecastBatch weatherBatch = mWeatherBatch;
+        weatherBatch.clear();
+        int changed = 0;
+        int count = forecasts.size();
+        String[] locationSettings = new String[count];
+        int[] statuses = new int[count];
+        long[] lastSyncs = new long[count];
+        String[] cityNames = new String[count];
+        double[] lats = new double[count];
+        double[] longs = new double[count];
+        for (int i = 0; i < count; i++) {
+            Forecast forecast = forecasts.get(i);
+            locationSettings[i] = forecast.locationSetting;
+            statuses[i] = forecast.status;
+            if (forecast.modified) {
+                lastSyncs[i] = now;
+                cityNames[i] = forecast.cityName;
+                lats[i] = forecast.cityLatitude;
+                longs[i] = forecast.cityLongitude;
+                // the provider turns the index of the location into its id
+                forecast.days.setLocationId(i);
+                weatherBatch.addAll(forecast.days);
+            }
+        }
 
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+        // add to database, only the days that are new or different are written
+        Bundle extras = weatherBatch.toBundle();
+        extras.putStringArray(WeatherContract.EXTRA_LOCATION_SETTINGS, locationSettings);
+        extras.putIntArray(WeatherContract.EXTRA_SYNC_STATUSES, statuses);
+        extras.putLongArray(WeatherContract.EXTRA_LAST_SYNCS, lastSyncs);
+        extras.putStringArray(WeatherContract.EXTRA_CITY_NAMES, cityNames);
+        extras.putDoubleArray(WeatherContract.EXTRA_COORD_LATS, lats);
+        extras.putDoubleArray(WeatherContract.EXTRA_COORD_LONGS, longs);
+        if ( weatherBatch.size() > 0 ) {
+            extras.putLong(WeatherContract.EXTRA_DELETE_BEFORE,
+                    DayClock.getDefault().getStartOfDay(startDay - 1));
+        }
+        boolean stored = false;
+        try {
+            Bundle result = resolver.call(WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.METHOD_WRITE_FORECAST_BATCH, null, extras);
+            if (result != null) {
+                changed = result.getInt(WeatherContract.RESULT_CHANGED_ROWS);
+                stored = true;
+            }
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Error storing the forecasts", e);
+        }
 
-            // now we work exclusively in UTC
-            dayTime = new Time();
+        // The validators tell the next sync that what the server sends is already stored: only
+        // true once the forecasts have been written, otherwise the next sync fetches them again.
+        SharedPreferences.Editor validators = getContext()
+                .getSharedPreferences(ConditionalGet.PREFS_NAME, Context.MODE_PRIVATE).edit();
+        for (Forecast forecast : forecasts) {
+            if (!forecast.modified) {
+                continue;
+            }
+            if (stored) {
+                forecast.request.commit(validators);
+            } else {
+                forecast.request.drop(validators);
+            }
+        }
+        validators.apply();
 
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
+        for (Forecast forecast : forecasts) {
+            if (forecast.locationSetting.equals(preferredLocation)) {
+                setLocationStatus(getContext(), forecast.status);
+            }
+        }
 
-                double high;
-                double low;
+        // so that the list, the widgets and the notification find the art already downloaded
+        ConditionArtCache.get(getContext()).prefetchActivePack();
 
-                String description;
-                int weatherId;
+        if ( changed > 0 ) {
+            updateWidgets();
+            updateMuzei();
+            notifyWeather();
+            // the watch gets the new forecast without having to ask for it
+            SunshineWearService.publishToday(getContext());
+        }
 
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
+        Log.d(LOG_TAG, "Sync Complete. " + changed + " of " + weatherBatch.size() + " days changed for "
+                + forecasts.size() + " locations");
+    }
 
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
+    /**
+     * Read one element of the "list" array and append it to the batch, the location key
+     * is set once the "city" object has been read.
+     */
+    private static void readDayForecast(JsonReader reader, long dateTime, ForecastBatch days)
+            throws IOException {
+        final String OWM_PRESSURE = "pressure";
+        final String OWM_HUMIDITY = "humidity";
+        final String OWM_WINDSPEED = "speed";
+        final String OWM_WIND_DIRECTION = "deg";
 
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+        // All temperatures are children of the "temp" object.
+        final String OWM_TEMPERATURE = "temp";
+        final String OWM_MAX = "max";
+        final String OWM_MIN = "min";
 
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+        final String OWM_WEATHER = "weather";
+        final String OWM_DESCRIPTION = "main";
+        final String OWM_WEATHER_ID = "id";
 
+        // These are the values that will be collected, every one of them has to be there.
+        double pressure = 0;
+        int humidity = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+
+        double high = 0;
+        double low = 0;
+
+        String description = null;
+        int weatherId = 0;
+
+        final int FOUND_PRESSURE = 1;
+        final int FOUND_HUMIDITY = 1 << 1;
+        final int FOUND_WINDSPEED = 1 << 2;
+        final int FOUND_WIND_DIRECTION = 1 << 3;
+        final int FOUND_MAX = 1 << 4;
+        final int FOUND_MIN = 1 << 5;
+        final int FOUND_WEATHER_ID = 1 << 6;
+        final int FOUND_ALL = (1 << 7) - 1;
+        int found = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                pressure = reader.nextDouble();
+                found |= FOUND_PRESSURE;
+            } else if (OWM_HUMIDITY.equals(name)) {
+                humidity = reader.nextInt();
+                found |= FOUND_HUMIDITY;
+            } else if (OWM_WINDSPEED.equals(name)) {
+                windSpeed = reader.nextDouble();
+                found |= FOUND_WINDSPEED;
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                windDirection = reader.nextDouble();
+                found |= FOUND_WIND_DIRECTION;
+            } else if (OWM_TEMPERATURE.equals(name)) {
                 // Temperatures are in a child object called "temp".  Try not to name variables
                 // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
-            }
-
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                getContext().getContentResolver()
-                        .delete(
-                                WeatherContract.WeatherEntry.CONTENT_URI,
-                                WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                                new String[]{Long.toString(dayTime.setJulianDay(julianStartDay-1))}
-                        );
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String tempField = reader.nextName();
+                    if (OWM_MAX.equals(tempField)) {
+                        high = reader.nextDouble();
+                        found |= FOUND_MAX;
+                    } else if (OWM_MIN.equals(tempField)) {
+                        low = reader.nextDouble();
+                        found |= FOUND_MIN;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Description is in a child array called "weather", which is 1 element long.
+                // That element also contains a weather code.
+                reader.beginArray();
+                boolean first = true;
+                while (reader.hasNext()) {
+                    if (!first) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    first = false;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String weatherField = reader.nextName();
+                        if (OWM_DESCRIPTION.equals(weatherField)) {
+                            description = reader.nextString();
+                        } else if (OWM_WEATHER_ID.equals(weatherField)) {
+                            weatherId = reader.nextInt();
+                            found |= FOUND_WEATHER_ID;
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
             }
+        }
+        reader.endObject();
 
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(),LOCATION_STATUS_SERVER_INVALID);
+        if (description == null) {
+            throw new IllegalStateException("Forecast day without weather description");
+        }
+        if (found != FOUND_ALL) {
+            throw new IllegalStateException("Forecast day with missing fields");
         }
+
+        days.add(0, dateTime, weatherId, description, low, high, humidity, pressure,
+                windSpeed, windDirection);
     }
 
     private void notifyWeather() {
@@ -384,8 +607,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
-                    int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
 
                     @SuppressLint("InlinedApi")
                     int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
@@ -396,19 +617,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                             ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
                             : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
 
-                    Bitmap largeIcon;
-                    try{
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight)
-                                .get();
-                    }catch (InterruptedException | ExecutionException e){
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
-                    }
+                    Bitmap largeIcon = ConditionArtCache.get(context).load(weatherId,
+                            ConditionArtCache.STYLE_ART, largeIconWidth, largeIconHeight);
 
                     String title = context.getString(R.string.app_name);
 
@@ -460,56 +670,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             context.startService(new Intent(ACTION_DATA_UPDATED).setClass(context, WeatherMuzeiSource.class));
         }
     }
-    /**
-     * Helper method to handle insertion of a new location in the weather database.
-     *
-     * @param locationSetting The location string used to request updates from the server.
-     * @param cityName A human-readable city name, e.g "Mountain View"
-     * @param lat the latitude of the city
-     * @param lon the longitude of the city
-     * @return the row ID of the added location.
-     */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
-        }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
-    }
-
 
     /**
      * Helper method to have the sync adapter sync immediately
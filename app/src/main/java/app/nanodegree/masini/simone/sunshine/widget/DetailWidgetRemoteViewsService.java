@@ -3,21 +3,16 @@ package app.nanodegree.masini.simone.sunshine.widget;
 import android.annotation.TargetApi;
 import android.content.Intent;
 import android.database.Cursor;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
-import android.util.Log;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
-
-import java.util.concurrent.ExecutionException;
-
+import app.nanodegree.masini.simone.sunshine.ConditionArtCache;
 import app.nanodegree.masini.simone.sunshine.R;
+import app.nanodegree.masini.simone.sunshine.SunshineSettings;
 import app.nanodegree.masini.simone.sunshine.Utility;
 import app.nanodegree.masini.simone.sunshine.data.WeatherContract;
 
@@ -49,6 +44,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
             private Cursor data = null;
+            private final int mIconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
 
             @Override
             public void onCreate() {
@@ -99,19 +95,13 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         R.layout.widget_detail_list_item);
                 int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
+                Uri weatherArtUri = null;
+                SunshineSettings settings = SunshineSettings.get(DetailWidgetRemoteViewsService.this);
+                if ( !settings.localGraphics ) {
+                    // Only the uri of a widget sized file goes to the launcher, not the bitmap,
+                    // the bundled icons are sent as resources
+                    weatherArtUri = ConditionArtCache.get(DetailWidgetRemoteViewsService.this)
+                            .getArtUri(weatherId, ConditionArtCache.STYLE_ICON, mIconSize, mIconSize);
                 }
                 String description = data.getString(INDEX_WEATHER_DESC);
                 long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
@@ -123,8 +113,8 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
                 String formattedMinTemperature =
                         Utility.formatTemperature(DetailWidgetRemoteViewsService.this, minTemp);
-                if (weatherArtImage != null) {
-                    views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
+                if (weatherArtUri != null) {
+                    views.setImageViewUri(R.id.widget_icon, weatherArtUri);
                 } else {
                     views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
                 }
@@ -137,8 +127,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
                 final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
+                String locationSetting = settings.preferredLocation;
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
                         locationSetting,
                         dateInMillis);
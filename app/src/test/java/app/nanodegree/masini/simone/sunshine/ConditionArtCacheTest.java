@@ -0,0 +1,60 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConditionArtCacheTest {
+
+    private static final String ART_PACK = "https://example.com/art/%s.png";
+    private static final String OTHER_ART_PACK = "https://example.com/other/%s.png";
+
+    private ConditionArtCache mArtCache;
+
+    @Before
+    public void setUp() {
+        mArtCache = ConditionArtCache.get(new TestContext());
+    }
+
+    @Test
+    public void bundledArtHasNoPackImage() {
+        ConditionArtCache.Art art = mArtCache.getArt(null, 500, ConditionArtCache.STYLE_ICON, 48, 48);
+        assertEquals(R.drawable.ic_rain, art.resource);
+        assertNull(art.packKey);
+
+        art = mArtCache.getArt(null, 500, ConditionArtCache.STYLE_ART, 96, 96);
+        assertEquals(R.drawable.art_rain, art.resource);
+
+        art = mArtCache.getArt(null, 0, ConditionArtCache.STYLE_ICON, 48, 48);
+        assertEquals(-1, art.resource);
+        assertNull(art.packKey);
+    }
+
+    @Test
+    public void conditionsOfTheSameImageShareIt() {
+        ConditionArtCache.Art rain = mArtCache.getArt(ART_PACK, 500, ConditionArtCache.STYLE_ICON, 48, 48);
+        ConditionArtCache.Art showers = mArtCache.getArt(ART_PACK, 521, ConditionArtCache.STYLE_ICON, 48, 48);
+        ConditionArtCache.Art snow = mArtCache.getArt(ART_PACK, 600, ConditionArtCache.STYLE_ICON, 48, 48);
+        assertNotNull(rain.packKey);
+        assertTrue(rain.isSameImage(showers));
+        assertFalse(rain.isSameImage(snow));
+    }
+
+    @Test
+    public void sizesAndArtPacksHaveImagesOfTheirOwn() {
+        ConditionArtCache.Art art = mArtCache.getArt(ART_PACK, 800, ConditionArtCache.STYLE_ICON, 48, 48);
+        ConditionArtCache.Art again = mArtCache.getArt(ART_PACK, 800, ConditionArtCache.STYLE_ICON, 48, 48);
+        ConditionArtCache.Art bigger = mArtCache.getArt(ART_PACK, 800, ConditionArtCache.STYLE_ICON, 96, 96);
+        ConditionArtCache.Art bundled = mArtCache.getArt(null, 800, ConditionArtCache.STYLE_ICON, 48, 48);
+        ConditionArtCache.Art other = mArtCache.getArt(OTHER_ART_PACK, 800, ConditionArtCache.STYLE_ICON, 48, 48);
+        assertTrue(art.isSameImage(again));
+        assertFalse(art.isSameImage(bigger));
+        assertFalse(art.isSameImage(bundled));
+        assertFalse(art.isSameImage(other));
+    }
+}
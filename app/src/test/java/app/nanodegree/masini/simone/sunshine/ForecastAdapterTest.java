@@ -0,0 +1,142 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+import android.widget.AbsListView;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Binds the rows of a forecast list to stand-in views, the framework of the unit tests doing
+ * nothing: what's measured is the adapter's own work, which is to allocate nothing.
+ */
+public class ForecastAdapterTest {
+
+    private static final int[] CONDITIONS = {200, 300, 500, 511, 600, 741, 800, 801, 804};
+    private static final int ROW_COUNT = 14;
+    private static final int LIST_ICON_SIZE = 48;
+    private static final int TODAY_ICON_SIZE = 96;
+    private static final int BIND_RUNS = 1000;
+
+    private ForecastAdapter mAdapter;
+    private ForecastAdapter.ForecastAdapterViewHolder mTodayHolder;
+    private ForecastAdapter.ForecastAdapterViewHolder mDayHolder;
+
+    /**
+     * Remembers the image it's been given.
+     */
+    private static final class RecordingImageView extends ImageView {
+        int resource = -1;
+
+        RecordingImageView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void setImageResource(int resId) {
+            resource = resId;
+        }
+
+        @Override
+        public void setImageDrawable(Drawable drawable) {
+            resource = -1;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = new TestContext();
+        ConditionArtCache artCache = ConditionArtCache.get(context);
+        ForecastRows.Row[] rows = new ForecastRows.Row[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            int weatherId = CONDITIONS[i % CONDITIONS.length];
+            rows[i] = new ForecastRows.Row(i + 1, 1450000000000L + i * 86400000L, weatherId,
+                    artCache.getArt(null, weatherId, ConditionArtCache.STYLE_ICON,
+                            LIST_ICON_SIZE, LIST_ICON_SIZE),
+                    artCache.getArt(null, weatherId, ConditionArtCache.STYLE_ART,
+                            TODAY_ICON_SIZE, TODAY_ICON_SIZE),
+                    "Day " + i, "Today, day " + i, "Condition " + weatherId,
+                    "Forecast: condition " + weatherId, "20", "High 20", "10", "Low 10");
+        }
+
+        mAdapter = new ForecastAdapter(context, null, new View(context),
+                AbsListView.CHOICE_MODE_NONE);
+        mAdapter.swapRows(new ForecastRows(rows, "45.0", "9.0", true, "", Locale.US, 0));
+        mTodayHolder = newViewHolder(context);
+        mDayHolder = newViewHolder(context);
+    }
+
+    /**
+     * @return a view holder of stand-in views. The holder finds its views in the layout of the
+     * item, which has none here: they're set afterwards.
+     */
+    private ForecastAdapter.ForecastAdapterViewHolder newViewHolder(Context context)
+            throws Exception {
+        ForecastAdapter.ForecastAdapterViewHolder holder =
+                mAdapter.new ForecastAdapterViewHolder(new View(context));
+        setView(holder, "mIconView", new RecordingImageView(context));
+        setView(holder, "mDateView", new TextView(context));
+        setView(holder, "mDescriptionView", new TextView(context));
+        setView(holder, "mHighTempView", new TextView(context));
+        setView(holder, "mLowTempView", new TextView(context));
+        return holder;
+    }
+
+    private static void setView(ForecastAdapter.ForecastAdapterViewHolder holder, String name,
+                                View view) throws Exception {
+        Field field = ForecastAdapter.ForecastAdapterViewHolder.class.getField(name);
+        field.setAccessible(true);
+        field.set(holder, view);
+    }
+
+    @Test
+    public void bindShowsTheArtOfTheRow() {
+        mAdapter.onBindViewHolder(mTodayHolder, 0);
+        assertEquals(WeatherCondition.forId(CONDITIONS[0]).artResource,
+                ((RecordingImageView) mTodayHolder.mIconView).resource);
+        mAdapter.onBindViewHolder(mDayHolder, 2);
+        assertEquals(WeatherCondition.forId(CONDITIONS[2]).iconResource,
+                ((RecordingImageView) mDayHolder.mIconView).resource);
+    }
+
+    @Test
+    public void bindAllocatesNothing() {
+        long allocated = Allocations.count(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter.onBindViewHolder(mTodayHolder, 0);
+                for (int position = 1; position < ROW_COUNT; position++) {
+                    mAdapter.onBindViewHolder(mDayHolder, position);
+                }
+            }
+        }, BIND_RUNS);
+        assertEquals("bytes allocated by " + BIND_RUNS + " binds of the list", 0, allocated);
+    }
+
+    @Test
+    public void partialBindAllocatesNothing() {
+        final List<Object> payloads = Collections.<Object>singletonList(
+                ForecastRows.CHANGED_CONDITION | ForecastRows.CHANGED_TEMPERATURE);
+        long allocated = Allocations.count(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter.onBindViewHolder(mTodayHolder, 0, payloads);
+                for (int position = 1; position < ROW_COUNT; position++) {
+                    mAdapter.onBindViewHolder(mDayHolder, position, payloads);
+                }
+            }
+        }, BIND_RUNS);
+        assertEquals("bytes allocated by " + BIND_RUNS + " partial binds of the list", 0, allocated);
+    }
+}
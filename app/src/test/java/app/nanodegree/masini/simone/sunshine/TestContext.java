@@ -0,0 +1,30 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+
+import java.io.File;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine
+ *
+ * The application context of the unit tests: its own, with a cache directory that doesn't
+ * exist, so that nothing is read from or written to it.
+ */
+final class TestContext extends ContextWrapper {
+
+    TestContext() {
+        super(null);
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public File getCacheDir() {
+        return new File(System.getProperty("java.io.tmpdir"), "sunshine-test-no-cache");
+    }
+}
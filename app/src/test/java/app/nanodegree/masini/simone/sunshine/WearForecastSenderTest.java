@@ -0,0 +1,146 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * What the watch gets from {@link WearForecastSender}, against a stand-in data layer, compared
+ * with how the forecast used to be sent: the icon encoded and put along with every forecast.
+ */
+public class WearForecastSenderTest {
+
+    // About the size of a 128 x 128 PNG icon
+    private static final int ICON_BYTES = 12 * 1024;
+    // A day of syncs every three hours, plus the watch asking when it's turned on a few times
+    private static final int SENDS_PER_DAY = 8 + 4;
+
+    private final Image mRain = new Image(1);
+    private final Image mClear = new Image(2);
+
+    private FakeDataLayer mDataLayer;
+    private CountingSender mSender;
+
+    /**
+     * An icon image, which encodes to bytes of its own.
+     */
+    private static final class Image {
+        final byte[] encoded;
+
+        Image(int seed) {
+            encoded = new byte[ICON_BYTES];
+            Arrays.fill(encoded, (byte) seed);
+        }
+    }
+
+    private static final class CountingSender extends WearForecastSender<Image> {
+        int encodes;
+
+        @Override
+        protected byte[] encode(Image image) {
+            encodes++;
+            return image.encoded.clone();
+        }
+    }
+
+    /**
+     * Counts the bytes put, and takes them or not.
+     */
+    private static final class FakeDataLayer implements WearForecastSender.DataLayer {
+        boolean accepting = true;
+        int iconsPut;
+        long bytesPut;
+        int forecastsPut;
+
+        @Override
+        public boolean putIcon(byte[] icon, String digest) {
+            if (!accepting) {
+                return false;
+            }
+            iconsPut++;
+            bytesPut += icon.length + digest.length();
+            return true;
+        }
+
+        @Override
+        public boolean putForecast(long date, String tempMax, String tempMin, int weatherId) {
+            if (!accepting) {
+                return false;
+            }
+            forecastsPut++;
+            bytesPut += 8 + tempMax.length() + tempMin.length() + 4;
+            return true;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mDataLayer = new FakeDataLayer();
+        mSender = new CountingSender();
+    }
+
+    private boolean send(String tempMax, Image image) {
+        return mSender.send(mDataLayer, 1448841600000L, tempMax, "10", 500, image);
+    }
+
+    @Test
+    public void iconIsEncodedAndSentOnce() {
+        for (int i = 0; i < SENDS_PER_DAY; i++) {
+            assertTrue(send(Integer.toString(20 + i % 3), mRain));
+        }
+        assertEquals(1, mSender.encodes);
+        assertEquals(1, mDataLayer.iconsPut);
+        assertEquals(SENDS_PER_DAY, mDataLayer.forecastsPut);
+    }
+
+    @Test
+    public void newIconIsSent() {
+        send("20", mRain);
+        send("21", mClear);
+        send("21", mClear);
+        send("20", mRain);
+        assertEquals(2, mSender.encodes);
+        assertEquals(3, mDataLayer.iconsPut);
+    }
+
+    @Test
+    public void iconNotTakenIsSentAgain() {
+        mDataLayer.accepting = false;
+        assertFalse(send("20", mRain));
+        mDataLayer.accepting = true;
+        assertTrue(send("20", mRain));
+        assertEquals(1, mDataLayer.iconsPut);
+        // encoded once all the same
+        assertEquals(1, mSender.encodes);
+    }
+
+    @Test
+    public void sendsFarLessThanBefore() {
+        // before: every send encoded the icon and put it with the forecast
+        long bytesBefore = 0;
+        int encodesBefore = 0;
+        for (int i = 0; i < SENDS_PER_DAY; i++) {
+            Image image = i < SENDS_PER_DAY / 2 ? mRain : mClear;
+            encodesBefore++;
+            bytesBefore += image.encoded.length + 8 + 2 + 2 + 4;
+        }
+
+        for (int i = 0; i < SENDS_PER_DAY; i++) {
+            send("20", i < SENDS_PER_DAY / 2 ? mRain : mClear);
+        }
+
+        System.out.println("A day of forecasts to the watch: " + bytesBefore + " bytes and "
+                + encodesBefore + " icon encodings before, " + mDataLayer.bytesPut
+                + " bytes and " + mSender.encodes + " icon encodings now");
+        assertEquals(2, mSender.encodes);
+        assertEquals(2, mDataLayer.iconsPut);
+        // the two icons, with their digest, and small forecasts
+        assertTrue(mDataLayer.bytesPut <= 2 * (ICON_BYTES + 40) + SENDS_PER_DAY * 32);
+        assertTrue(bytesBefore >= SENDS_PER_DAY * ICON_BYTES);
+    }
+}
@@ -0,0 +1,225 @@
+package app.nanodegree.masini.simone.sunshine.sync;
+
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+import app.nanodegree.masini.simone.sunshine.net.HttpTransport;
+import app.nanodegree.masini.simone.sunshine.net.SunshineHttp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The conditional GET of the sync adapter against a stand-in server: what it sends, and what it
+ * makes of the answers, sync after sync.
+ */
+public class ConditionalGetTest {
+
+    private static final String URL = "http://api.openweathermap.org/data/2.5/forecast/daily?q=94043";
+    private static final String LOCATION = "94043";
+    private static final int TODAY = 16800;
+    private static final String FORECAST = "{\"city\":{\"name\":\"Mountain View\"},\"list\":[]}\n";
+    private static final String OTHER_FORECAST = "{\"city\":{\"name\":\"Mountain View\"},\"list\":[{}]}\n";
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED = "Sat, 28 Nov 2015 10:00:00 GMT";
+
+    private FakeTransport mServer;
+    private SharedPreferences mValidators;
+    private String mBodyRead;
+
+    /**
+     * Answers with the responses queued, and remembers the requests.
+     */
+    private static final class FakeTransport implements HttpTransport {
+        final Queue<FakeResponse> responses = new ArrayDeque<FakeResponse>();
+        Map<String, String> lastRequestHeaders;
+        int requests;
+
+        @Override
+        public Response get(String url, Map<String, String> requestHeaders) {
+            assertEquals(URL, url);
+            lastRequestHeaders = requestHeaders == null
+                    ? new HashMap<String, String>() : new HashMap<String, String>(requestHeaders);
+            requests++;
+            return responses.remove();
+        }
+    }
+
+    private static final class FakeResponse implements HttpTransport.Response {
+        final int code;
+        final Map<String, String> headers = new HashMap<String, String>();
+        final String body;
+        boolean closed;
+
+        FakeResponse(int code, String body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        FakeResponse header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        @Override
+        public int getCode() {
+            return code;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return body == null ? null : new ByteArrayInputStream(body.getBytes("UTF-8"));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mServer = new FakeTransport();
+        SunshineHttp.setTransport(mServer);
+        mValidators = new MemoryPreferences();
+    }
+
+    @After
+    public void tearDown() {
+        SunshineHttp.setTransport(null);
+    }
+
+    /**
+     * Reads the forecast like a sync of the given day, which stores it or not.
+     */
+    private int sync(int day, boolean stored) throws IOException {
+        mBodyRead = null;
+        ConditionalGet request = new ConditionalGet(mValidators, LOCATION, day);
+        int result = request.get(URL, new ConditionalGet.BodyReader() {
+            @Override
+            public void read(InputStream body) throws IOException {
+                // like the JSON parser, which stops at the end of the object
+                ByteArrayOutputStream read = new ByteArrayOutputStream();
+                int c;
+                while ((c = body.read()) != -1 && c != '\n') {
+                    read.write(c);
+                }
+                mBodyRead = read.toString("UTF-8");
+            }
+        });
+        if (result == ConditionalGet.READ) {
+            SharedPreferences.Editor editor = mValidators.edit();
+            if (stored) {
+                request.commit(editor);
+            } else {
+                request.drop(editor);
+            }
+            editor.apply();
+        }
+        return result;
+    }
+
+    private FakeResponse answer(int code, String body) {
+        FakeResponse response = new FakeResponse(code, body);
+        mServer.responses.add(response);
+        return response;
+    }
+
+    @Test
+    public void storedForecastIsNotModifiedTheSameDay() throws IOException {
+        FakeResponse first = answer(HttpURLConnection.HTTP_OK, FORECAST)
+                .header("ETag", ETAG).header("Last-Modified", LAST_MODIFIED);
+        assertEquals(ConditionalGet.READ, sync(TODAY, true));
+        assertTrue(mServer.lastRequestHeaders.isEmpty());
+        assertEquals(FORECAST.trim(), mBodyRead);
+        assertTrue(first.closed);
+
+        FakeResponse second = answer(HttpURLConnection.HTTP_NOT_MODIFIED, null);
+        assertEquals(ConditionalGet.NOT_MODIFIED, sync(TODAY, true));
+        assertEquals(ETAG, mServer.lastRequestHeaders.get("If-None-Match"));
+        assertEquals(LAST_MODIFIED, mServer.lastRequestHeaders.get("If-Modified-Since"));
+        assertNull("a 304 has nothing to read", mBodyRead);
+        assertTrue(second.closed);
+    }
+
+    @Test
+    public void validatorsOfAnotherDayAreNotSent() throws IOException {
+        answer(HttpURLConnection.HTTP_OK, FORECAST).header("ETag", ETAG);
+        assertEquals(ConditionalGet.READ, sync(TODAY, true));
+
+        // the same body, stored again dated from the new day
+        answer(HttpURLConnection.HTTP_OK, FORECAST).header("ETag", ETAG);
+        assertEquals(ConditionalGet.READ, sync(TODAY + 1, true));
+        assertTrue(mServer.lastRequestHeaders.isEmpty());
+    }
+
+    @Test
+    public void validatorsOfAForecastNotStoredAreDropped() throws IOException {
+        answer(HttpURLConnection.HTTP_OK, FORECAST).header("ETag", ETAG);
+        assertEquals(ConditionalGet.READ, sync(TODAY, true));
+
+        // a new forecast that couldn't be stored: the validators of the old one don't hold
+        answer(HttpURLConnection.HTTP_OK, OTHER_FORECAST).header("ETag", "\"v2\"");
+        assertEquals(ConditionalGet.READ, sync(TODAY, false));
+        assertEquals(ETAG, mServer.lastRequestHeaders.get("If-None-Match"));
+
+        // so the next sync asks and reads it all again, even the old forecast
+        answer(HttpURLConnection.HTTP_OK, FORECAST).header("ETag", ETAG);
+        assertEquals(ConditionalGet.READ, sync(TODAY, true));
+        assertTrue(mServer.lastRequestHeaders.isEmpty());
+        assertFalse(mValidators.getAll().isEmpty());
+    }
+
+    @Test
+    public void sameBodyWithoutValidatorsIsUnchanged() throws IOException {
+        answer(HttpURLConnection.HTTP_OK, FORECAST);
+        assertEquals(ConditionalGet.READ, sync(TODAY, true));
+
+        FakeResponse same = answer(HttpURLConnection.HTTP_OK, FORECAST);
+        assertEquals(ConditionalGet.UNCHANGED, sync(TODAY, true));
+        assertTrue(mServer.lastRequestHeaders.isEmpty());
+        assertTrue(same.closed);
+
+        answer(HttpURLConnection.HTTP_OK, OTHER_FORECAST);
+        assertEquals(ConditionalGet.READ, sync(TODAY, true));
+        assertEquals(OTHER_FORECAST.trim(), mBodyRead);
+    }
+
+    @Test
+    public void bodyHashCoversWhatTheReaderLeft() throws IOException {
+        answer(HttpURLConnection.HTTP_OK, FORECAST);
+        assertEquals(ConditionalGet.READ, sync(TODAY, true));
+
+        // the same forecast as far as the reader goes, but not the same bytes
+        answer(HttpURLConnection.HTTP_OK, FORECAST + " ");
+        assertEquals(ConditionalGet.READ, sync(TODAY, true));
+        assertEquals(2, mServer.requests);
+    }
+
+    @Test
+    public void nothingIsKeptWithoutBody() throws IOException {
+        answer(HttpURLConnection.HTTP_OK, null).header("ETag", ETAG);
+        assertEquals(ConditionalGet.NO_BODY, sync(TODAY, true));
+        assertTrue(mValidators.getAll().isEmpty());
+    }
+}
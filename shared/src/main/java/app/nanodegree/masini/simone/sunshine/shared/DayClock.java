@@ -0,0 +1,195 @@
+package app.nanodegree.masini.simone.sunshine.shared;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine.shared
+ *
+ * Day arithmetic in a time zone: which local day an instant falls on, as a number of days since
+ * 1970-01-01, and when a local day starts.
+ *
+ * The offsets of the zone from a year before to two years after the clock was created are
+ * kept in a table of transitions, so the methods below are a binary search and a bit of
+ * primitive math, without allocating anything. Instants outside of that window ask the
+ * TimeZone directly.
+ */
+public final class DayClock {
+
+    public static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Julian day number of 1970-01-01, the epoch day 0.
+     */
+    public static final int EPOCH_JULIAN_DAY = 2440588;
+
+    private static final long TABLE_BEFORE_MILLIS = 366 * MILLIS_PER_DAY;
+    private static final long TABLE_AFTER_MILLIS = 2 * 366 * MILLIS_PER_DAY;
+
+    // How often getDefault() checks whether the default time zone has changed
+    private static final long DEFAULT_CHECK_INTERVAL_MILLIS = 60 * 1000;
+
+    private static volatile DayClock sDefault;
+    private static volatile long sDefaultCheckedAt;
+
+    private final TimeZone mTimeZone;
+    private final long mTableStart;
+    private final long mTableEnd;
+    // mOffsets[i] is the offset from mTransitions[i - 1] (from mTableStart for i = 0) to
+    // mTransitions[i] (to mTableEnd for the last one)
+    private final long[] mTransitions;
+    private final int[] mOffsets;
+
+    private DayClock(TimeZone timeZone, long now) {
+        mTimeZone = timeZone;
+        mTableStart = now - TABLE_BEFORE_MILLIS;
+        mTableEnd = now + TABLE_AFTER_MILLIS;
+
+        long[] transitions = new long[8];
+        int[] offsets = new int[9];
+        int count = 0;
+        offsets[0] = timeZone.getOffset(mTableStart);
+        // Transitions are months apart: looking at each day and then narrowing down the
+        // instant of each change finds them all.
+        for (long from = mTableStart; from < mTableEnd; from += MILLIS_PER_DAY) {
+            long to = Math.min(from + MILLIS_PER_DAY, mTableEnd);
+            int offset = timeZone.getOffset(to);
+            if (offset != offsets[count]) {
+                long low = from;
+                long high = to;
+                while (high - low > 1) {
+                    long middle = (low + high) >>> 1;
+                    if (timeZone.getOffset(middle) == offset) {
+                        high = middle;
+                    } else {
+                        low = middle;
+                    }
+                }
+                if (count == transitions.length) {
+                    transitions = Arrays.copyOf(transitions, count * 2);
+                    offsets = Arrays.copyOf(offsets, count * 2 + 1);
+                }
+                transitions[count] = high;
+                offsets[++count] = offset;
+            }
+        }
+        mTransitions = Arrays.copyOf(transitions, count);
+        mOffsets = Arrays.copyOf(offsets, count + 1);
+    }
+
+    /**
+     * @return a clock for the given time zone
+     */
+    public static DayClock forTimeZone(TimeZone timeZone) {
+        return new DayClock((TimeZone) timeZone.clone(), System.currentTimeMillis());
+    }
+
+    /**
+     * @return the clock of the default time zone. A change of the default time zone is picked
+     * up within a minute, or right away after {@link #invalidateDefault()}.
+     */
+    public static DayClock getDefault() {
+        DayClock clock = sDefault;
+        long now = System.currentTimeMillis();
+        if (clock == null || now - sDefaultCheckedAt > DEFAULT_CHECK_INTERVAL_MILLIS
+                || now < clock.mTableStart || now >= clock.mTableEnd) {
+            TimeZone timeZone = TimeZone.getDefault();
+            if (clock == null || !clock.mTimeZone.getID().equals(timeZone.getID())
+                    || now < clock.mTableStart || now + TABLE_BEFORE_MILLIS >= clock.mTableEnd) {
+                clock = new DayClock(timeZone, now);
+                sDefault = clock;
+            }
+            sDefaultCheckedAt = now;
+        }
+        return clock;
+    }
+
+    /**
+     * Drops the clock of the default time zone, to be called when the time zone changes
+     * (Intent.ACTION_TIMEZONE_CHANGED).
+     */
+    public static void invalidateDefault() {
+        sDefault = null;
+    }
+
+    public TimeZone getTimeZone() {
+        return (TimeZone) mTimeZone.clone();
+    }
+
+    /**
+     * @return the offset from UTC of the time zone at the given instant, in milliseconds
+     */
+    public int getOffset(long millis) {
+        if (millis < mTableStart || millis >= mTableEnd) {
+            return mTimeZone.getOffset(millis);
+        }
+        int index = Arrays.binarySearch(mTransitions, millis);
+        // a transition instant already has the new offset
+        return mOffsets[index >= 0 ? index + 1 : -(index + 1)];
+    }
+
+    /**
+     * @return the local day of the instant, in days since 1970-01-01
+     */
+    public int getEpochDay(long millis) {
+        return (int) floorDiv(millis + getOffset(millis), MILLIS_PER_DAY);
+    }
+
+    /**
+     * @return the instant the local day starts at, usually its midnight
+     */
+    public long getStartOfDay(int epochDay) {
+        long localMidnight = epochDay * MILLIS_PER_DAY;
+        // The offset at midnight is the one a bit earlier or a bit later than the local
+        // midnight taken as UTC: two rounds settle it.
+        long start = localMidnight - getOffset(localMidnight);
+        start = localMidnight - getOffset(start);
+        if (getEpochDay(start) < epochDay) {
+            // midnight has been skipped by a transition, the day starts with it
+            int index = Arrays.binarySearch(mTransitions, start);
+            int next = index >= 0 ? index : -(index + 1);
+            if (start >= mTableStart && next < mTransitions.length && mTransitions[next] < mTableEnd) {
+                start = mTransitions[next];
+            } else {
+                // outside of the table, narrowed down like the transitions are found
+                long high = start + MILLIS_PER_DAY;
+                while (high - start > 1) {
+                    long middle = (start + high) >>> 1;
+                    if (getEpochDay(middle) < epochDay) {
+                        start = middle;
+                    } else {
+                        high = middle;
+                    }
+                }
+                start = high;
+            }
+        } else if (getEpochDay(start - 1) == epochDay) {
+            // midnight happened twice, the day starts with the first one
+            start = localMidnight - getOffset(start - 1);
+        }
+        return start;
+    }
+
+    /**
+     * @return the instant the local day of the given instant starts at
+     */
+    public long getStartOfDayContaining(long millis) {
+        return getStartOfDay(getEpochDay(millis));
+    }
+
+    /**
+     * @return the Julian day number of an epoch day
+     */
+    public static int toJulianDay(int epochDay) {
+        return epochDay + EPOCH_JULIAN_DAY;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long quotient = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            quotient--;
+        }
+        return quotient;
+    }
+}
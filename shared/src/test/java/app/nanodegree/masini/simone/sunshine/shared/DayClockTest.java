@@ -0,0 +1,171 @@
+package app.nanodegree.masini.simone.sunshine.shared;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine.shared
+ *
+ * Checks DayClock against java.util.Calendar, in zones with daylight saving time: around now,
+ * where the clock answers from its table of transitions, and years back, where it asks the
+ * TimeZone.
+ */
+public class DayClockTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    // Sao Paulo used to skip its midnight when daylight saving time started, Havana skips it
+    // in March and repeats it in November
+    private static final String[] ZONES = {
+            "America/Sao_Paulo", "America/Havana", "Europe/Rome", "America/New_York",
+            "Australia/Lord_Howe", "Asia/Kathmandu", "UTC"
+    };
+
+    @Test
+    public void offsetMatchesTimeZone() {
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            DayClock clock = DayClock.forTimeZone(zone);
+            for (long millis : instants()) {
+                assertEquals(id + " at " + millis, zone.getOffset(millis), clock.getOffset(millis));
+            }
+        }
+    }
+
+    @Test
+    public void epochDayMatchesCalendar() {
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            DayClock clock = DayClock.forTimeZone(zone);
+            Calendar calendar = Calendar.getInstance(zone);
+            for (long millis : instants()) {
+                calendar.setTimeInMillis(millis);
+                assertEquals(id + " at " + millis, epochDay(calendar), clock.getEpochDay(millis));
+            }
+        }
+    }
+
+    @Test
+    public void startOfDayMatchesCalendar() {
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            DayClock clock = DayClock.forTimeZone(zone);
+            for (long millis : instants()) {
+                assertEquals(id + " at " + millis, firstMidnight(zone, millis),
+                        clock.getStartOfDayContaining(millis));
+            }
+        }
+    }
+
+    @Test
+    public void skippedMidnightStartsAtTransition() {
+        // 2018-11-04 in Sao Paulo went from 23:59:59 -03:00 to 01:00 -02:00
+        TimeZone zone = TimeZone.getTimeZone("America/Sao_Paulo");
+        DayClock clock = DayClock.forTimeZone(zone);
+        long transition = utc(2018, Calendar.NOVEMBER, 4, 3);
+        assertEquals(transition, clock.getStartOfDayContaining(transition + 12 * HOUR));
+        assertEquals(transition, clock.getStartOfDay(clock.getEpochDay(transition)));
+        assertEquals(clock.getEpochDay(transition) - 1, clock.getEpochDay(transition - 1));
+    }
+
+    @Test
+    public void repeatedMidnightStartsAtFirstOne() {
+        // 2018-11-04 in Havana went from 00:59:59 -04:00 back to 00:00 -05:00
+        TimeZone zone = TimeZone.getTimeZone("America/Havana");
+        DayClock clock = DayClock.forTimeZone(zone);
+        long firstMidnight = utc(2018, Calendar.NOVEMBER, 4, 4);
+        assertEquals(firstMidnight, clock.getStartOfDayContaining(firstMidnight + 12 * HOUR));
+        assertEquals(clock.getEpochDay(firstMidnight), clock.getEpochDay(firstMidnight + HOUR));
+    }
+
+    @Test
+    public void startOfDayIsInItsDay() {
+        for (String id : ZONES) {
+            DayClock clock = DayClock.forTimeZone(TimeZone.getTimeZone(id));
+            for (long millis : instants()) {
+                int day = clock.getEpochDay(millis);
+                long start = clock.getStartOfDay(day);
+                assertTrue(id + " at " + millis, start <= millis);
+                assertEquals(id + " at " + millis, day, clock.getEpochDay(start));
+                assertEquals(id + " at " + millis, day - 1, clock.getEpochDay(start - 1));
+            }
+        }
+    }
+
+    @Test
+    public void julianDay() {
+        assertEquals(2440588, DayClock.toJulianDay(0));
+        assertEquals(2451545, DayClock.toJulianDay(10957));
+    }
+
+    /**
+     * @return instants every 7 hours from two years ago to three years from now, inside and
+     * outside of the table of the clocks, and from 2012 to 2019, outside of it
+     */
+    private static long[] instants() {
+        long now = System.currentTimeMillis();
+        long recentStart = now - 2 * 366 * DayClock.MILLIS_PER_DAY;
+        long recentEnd = now + 3 * 366 * DayClock.MILLIS_PER_DAY;
+        long pastStart = utc(2012, Calendar.JANUARY, 1, 0);
+        long pastEnd = utc(2019, Calendar.JANUARY, 1, 0);
+        long step = 7 * HOUR;
+        int recentCount = (int) ((recentEnd - recentStart) / step);
+        int pastCount = (int) ((pastEnd - pastStart) / step);
+        long[] instants = new long[recentCount + pastCount];
+        for (int i = 0; i < recentCount; i++) {
+            instants[i] = recentStart + i * step;
+        }
+        for (int i = 0; i < pastCount; i++) {
+            instants[recentCount + i] = pastStart + i * step;
+        }
+        return instants;
+    }
+
+    private static int epochDay(Calendar calendar) {
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.clear();
+        utc.set(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH),
+                calendar.get(Calendar.DAY_OF_MONTH));
+        return (int) (utc.getTimeInMillis() / DayClock.MILLIS_PER_DAY);
+    }
+
+    /**
+     * @return the start of the local day of the instant according to Calendar, the first one
+     * when midnight happens twice (Calendar picks the second one)
+     */
+    private static long firstMidnight(TimeZone zone, long millis) {
+        Calendar calendar = Calendar.getInstance(zone);
+        calendar.setTimeInMillis(millis);
+        int year = calendar.get(Calendar.YEAR);
+        int dayOfYear = calendar.get(Calendar.DAY_OF_YEAR);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        long midnight = calendar.getTimeInMillis();
+
+        int shift = zone.getOffset(midnight - HOUR) - zone.getOffset(midnight);
+        if (shift > 0) {
+            long earlier = midnight - shift;
+            calendar.setTimeInMillis(earlier);
+            if (calendar.get(Calendar.YEAR) == year && calendar.get(Calendar.DAY_OF_YEAR) == dayOfYear
+                    && calendar.get(Calendar.HOUR_OF_DAY) == 0 && calendar.get(Calendar.MINUTE) == 0) {
+                return earlier;
+            }
+        }
+        return midnight;
+    }
+
+    private static long utc(int year, int month, int day, int hour) {
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.clear();
+        utc.set(year, month, day, hour, 0);
+        return utc.getTimeInMillis();
+    }
+}
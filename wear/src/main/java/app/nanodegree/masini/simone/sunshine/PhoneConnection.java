@@ -0,0 +1,200 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.CapabilityApi;
+import com.google.android.gms.wearable.CapabilityInfo;
+import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.Wearable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine
+ *
+ * The one connection of the watch to the wear data layer, shared by the engines of the watch
+ * face, and the phone it asks the forecast to.
+ *
+ * Engines {@link #acquire(GoogleApiClient.ConnectionCallbacks)} the client while they're visible
+ * and {@link #release(GoogleApiClient.ConnectionCallbacks)} it when they're not. The client stays
+ * connected a little longer after the last release, so that the face going in and out of view
+ * doesn't connect every time.
+ *
+ * Requests go to the node that has the {@link #CAPABILITY} of the Sunshine app, which is looked
+ * up once and kept until the reachable nodes with it change, and only one request at a time is
+ * on its way.
+ *
+ * Everything but {@link #getClient()} is meant for the main thread.
+ */
+final class PhoneConnection implements GoogleApiClient.ConnectionCallbacks,
+        GoogleApiClient.OnConnectionFailedListener, CapabilityApi.CapabilityListener {
+
+    private static final String LOG_TAG = "SunshineWatchFace";
+
+    /**
+     * Capability of the phone app, see android_wear_capabilities in its resources.
+     */
+    static final String CAPABILITY = "sunshine_weather";
+
+    static final String PATH_REQUEST_INFO = "/path/requestInfo";
+
+    // How long the client stays connected after the last engine is done with it
+    private static final long DISCONNECT_DELAY_MS = 60 * 1000;
+
+    private static PhoneConnection sInstance;
+
+    private final GoogleApiClient mClient;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private int mUsers;
+
+    // Id of the node of the phone app, null when it has to be looked up
+    private volatile String mPhoneNodeId;
+    private final AtomicBoolean mRequestInFlight = new AtomicBoolean();
+
+    private final Runnable mDisconnect = new Runnable() {
+        @Override
+        public void run() {
+            if (mUsers == 0 && (mClient.isConnected() || mClient.isConnecting())) {
+                if (mClient.isConnected()) {
+                    Wearable.CapabilityApi.removeCapabilityListener(mClient, PhoneConnection.this, CAPABILITY);
+                }
+                mClient.disconnect();
+                mPhoneNodeId = null;
+            }
+        }
+    };
+
+    private PhoneConnection(Context context) {
+        mClient = new GoogleApiClient.Builder(context)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .addApi(Wearable.API)
+                .build();
+    }
+
+    static PhoneConnection get(Context context) {
+        if (sInstance == null) {
+            sInstance = new PhoneConnection(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    GoogleApiClient getClient() {
+        return mClient;
+    }
+
+    /**
+     * Connects the client if it isn't already. The callbacks are told when it's connected,
+     * right away if it already is, until {@link #release(GoogleApiClient.ConnectionCallbacks)}.
+     */
+    void acquire(GoogleApiClient.ConnectionCallbacks callbacks) {
+        mUsers++;
+        mHandler.removeCallbacks(mDisconnect);
+        mClient.registerConnectionCallbacks(callbacks);
+        if (!mClient.isConnected() && !mClient.isConnecting()) {
+            mClient.connect();
+        }
+    }
+
+    void release(GoogleApiClient.ConnectionCallbacks callbacks) {
+        mClient.unregisterConnectionCallbacks(callbacks);
+        if (--mUsers == 0) {
+            mHandler.postDelayed(mDisconnect, DISCONNECT_DELAY_MS);
+        }
+    }
+
+    /**
+     * Asks the phone for the forecast of today, telling it the size of the icon box. Does
+     * nothing while an earlier request is still on its way.
+     */
+    void requestInfo(int iconWidth, int iconHeight) {
+        if (!mRequestInFlight.compareAndSet(false, true)) {
+            return;
+        }
+        Log.d(LOG_TAG, "requestInfo");
+        final byte[] bytes = ByteBuffer.allocate(8).putInt(iconWidth).putInt(iconHeight).array();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!mClient.isConnected()) {
+                        return;
+                    }
+                    String nodeId = getPhoneNodeId();
+                    if (nodeId == null) {
+                        return;
+                    }
+                    MessageApi.SendMessageResult result = Wearable.MessageApi
+                            .sendMessage(mClient, nodeId, PATH_REQUEST_INFO, bytes).await();
+                    if (!result.getStatus().isSuccess()) {
+                        // looked up again by the next request
+                        mPhoneNodeId = null;
+                    }
+                } finally {
+                    mRequestInFlight.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the id of the reachable node with the capability of the phone app, null if
+     * there's none. Blocks when it has to be looked up.
+     */
+    private String getPhoneNodeId() {
+        String nodeId = mPhoneNodeId;
+        if (nodeId == null) {
+            CapabilityApi.GetCapabilityResult result = Wearable.CapabilityApi
+                    .getCapability(mClient, CAPABILITY, CapabilityApi.FILTER_REACHABLE).await();
+            if (result.getStatus().isSuccess()) {
+                nodeId = pickNode(result.getCapability());
+                mPhoneNodeId = nodeId;
+            }
+        }
+        return nodeId;
+    }
+
+    /**
+     * @return a node with the capability, one that is directly connected if any
+     */
+    private static String pickNode(CapabilityInfo capability) {
+        String nodeId = null;
+        for (Node node : capability.getNodes()) {
+            if (node.isNearby()) {
+                return node.getId();
+            }
+            nodeId = node.getId();
+        }
+        return nodeId;
+    }
+
+    @Override
+    public void onCapabilityChanged(CapabilityInfo capabilityInfo) {
+        mPhoneNodeId = pickNode(capabilityInfo);
+    }
+
+    @Override
+    public void onConnected(Bundle connectionHint) {
+        Wearable.CapabilityApi.addCapabilityListener(mClient, this, CAPABILITY);
+    }
+
+    @Override
+    public void onConnectionSuspended(int cause) {
+        mPhoneNodeId = null;
+    }
+
+    @Override
+    public void onConnectionFailed(ConnectionResult result) {
+        Log.d(LOG_TAG, "onConnectionFailed: " + result);
+    }
+}
@@ -24,10 +24,8 @@ import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.os.AsyncTask;
 import android.os.Bundle;
@@ -36,31 +34,33 @@ import android.os.Message;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.text.format.DateFormat;
-import android.text.format.Time;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
-import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
-import com.google.android.gms.wearable.Node;
-import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.Wearable;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
-import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
+import app.nanodegree.masini.simone.sunshine.shared.DayClock;
+
 import smasini.it.wear.BuildConfig;
 import smasini.it.wear.R;
 
@@ -88,59 +88,48 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         return new Engine();
     }
 
-    private class Engine extends CanvasWatchFaceService.Engine implements DataApi.DataListener, GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
+    private class Engine extends CanvasWatchFaceService.Engine implements DataApi.DataListener, GoogleApiClient.ConnectionCallbacks {
         final Handler mUpdateTimeHandler = new EngineHandler(this);
 
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mTime.clear(intent.getStringExtra("time-zone"));
-                mTime.setToNow();
+                DayClock.invalidateDefault();
 
                 initFormats();
                 invalidate();
             }
         };
 
-        GoogleApiClient mGoogleApiClient = new GoogleApiClient.Builder(SunshineWatchFaceService.this)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .addApi(Wearable.API)
-                .build();
+        // Shared by the engines, connected while one of them is visible
+        final PhoneConnection mConnection = PhoneConnection.get(SunshineWatchFaceService.this);
+        GoogleApiClient mGoogleApiClient = mConnection.getClient();
+        boolean mConnectionAcquired = false;
+
+        // The last forecast received, what the face shows until the phone has a newer one
+        WeatherCache mCache;
 
         boolean mRegisteredTimeZoneReceiver = false;
 
-        Date mDate;
         Date mDateLastSync;
-        SimpleDateFormat mDayOfWeekFormat;
-        java.text.DateFormat mDateFormat;
 
         AsyncTask<String, Void, Bitmap> mAsyncTask;
 
-        Paint mBackgroundPaint;
-        Paint mDatePaint;
-        Paint mTimePaint;
+        // The time over the static layer, drawn by the renderer with its paints
+        final WatchFaceRenderer mRenderer = new WatchFaceRenderer(new Canvas());
         Paint mLinesPaint;
-        Paint mWeatherIconPaint;
-        Paint mWeatherMaxPaint;
-        Paint mWeatherMinPaint;
 
         Bitmap mIconBitmap;
+        // The icon replaced by the last one, its memory reused by the decoding of the next one
+        Bitmap mSpareIcon;
+        // Digest of the icon in mIconBitmap, sent along with it
+        String mIconDigest;
         String mTempMax;
         String mTempMin;
 
         int mBitmapWidth;
         int mBitmapHeight;
 
-        boolean mAmbient;
-
-        Time mTime;
-
-        float mXOffset;
-        float mXOffsetWeather;
-        float mYOffset;
-        float mLineHeight;
-
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
          * disable anti-aliasing in ambient mode.
@@ -157,46 +146,50 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                     .setShowSystemUiTime(false)
                     .build());
             Resources resources = SunshineWatchFaceService.this.getResources();
-            mYOffset = resources.getDimension(R.dimen.digital_y_offset);
-            mLineHeight = resources.getDimension(R.dimen.digital_line_height);
+            mRenderer.setVerticalMetrics(resources.getDimension(R.dimen.digital_y_offset),
+                    resources.getDimension(R.dimen.digital_line_height));
 
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(resources.getColor(R.color.primary));
+            mRenderer.mBackgroundPaint.setColor(resources.getColor(R.color.primary));
 
-            mTimePaint = createTextPaint(resources.getColor(R.color.white), BOLD_TYPEFACE);
-            mDatePaint = createTextPaint(resources.getColor(R.color.grey_200));
-            mLinesPaint = createTextPaint(resources.getColor(R.color.grey_200));
+            setUpTextPaint(mRenderer.mTimePaint, resources.getColor(R.color.white), BOLD_TYPEFACE);
+            setUpTextPaint(mRenderer.mDatePaint, resources.getColor(R.color.grey_200));
+            mLinesPaint = new Paint();
+            setUpTextPaint(mLinesPaint, resources.getColor(R.color.grey_200));
 
-            mWeatherIconPaint = new Paint();
-            mWeatherIconPaint.setAntiAlias(false);
-            mWeatherIconPaint.setFilterBitmap(true);
-            mWeatherMaxPaint = createTextPaint(resources.getColor(R.color.white), BOLD_TYPEFACE);
-            mWeatherMinPaint = createTextPaint(resources.getColor(R.color.grey_200));
+            mRenderer.mWeatherIconPaint.setAntiAlias(false);
+            mRenderer.mWeatherIconPaint.setFilterBitmap(true);
+            setUpTextPaint(mRenderer.mWeatherMaxPaint, resources.getColor(R.color.white), BOLD_TYPEFACE);
+            setUpTextPaint(mRenderer.mWeatherMinPaint, resources.getColor(R.color.grey_200));
 
-            mTime = new Time();
-            mDate = new Date();
             initFormats();
 
             mTempMax = "--";
             mTempMin = "--";
+            mCache = new WeatherCache(SunshineWatchFaceService.this);
+            if (mCache.hasForecast()) {
+                mTempMax = mCache.getTempMax();
+                mTempMin = mCache.getTempMin();
+                mDateLastSync = new Date(mCache.getDate());
+            }
+            mRenderer.setWeather(mTempMax, mTempMin);
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            releaseConnection();
+            mRenderer.release();
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor){
-            return createTextPaint(textColor, NORMAL_TYPEFACE);
+        private void setUpTextPaint(Paint paint, int textColor){
+            setUpTextPaint(paint, textColor, NORMAL_TYPEFACE);
         }
 
-        private Paint createTextPaint(int textColor, Typeface typeface) {
-            Paint paint = new Paint();
+        private void setUpTextPaint(Paint paint, int textColor, Typeface typeface) {
             paint.setColor(textColor);
             paint.setTypeface(typeface);
             paint.setAntiAlias(true);
-            return paint;
         }
 
         @Override
@@ -205,37 +198,18 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
             if (visible) {
 
-                mGoogleApiClient.connect();
+                if (!mConnectionAcquired) {
+                    mConnectionAcquired = true;
+                    mConnection.acquire(this);
+                }
                 registerReceiver();
 
                 // Update time zone in case it changed while we weren't visible.
-                mTime.clear(TimeZone.getDefault().getID());
-                mTime.setToNow();
                 initFormats();
-
-                if(mDateLastSync == null){
-                    requestInfo();
-                }else{
-
-                    Time time = new Time();
-                    time.setToNow();
-                    long currentTime = System.currentTimeMillis();
-                    int julianDay = Time.getJulianDay(mDateLastSync.getTime(), time.gmtoff);
-                    int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
-
-                    if(julianDay != currentJulianDay){
-                        requestInfo();
-                    }else if(BuildConfig.DEBUG){
-                        //Log.d("SunshineWatchFace", "Message send only for debug");
-                        //requestInfo();
-                    }
-                }
+                // the forecast is read from the data layer once connected, see onConnected()
             } else {
                 unregisterReceiver();
-                if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
-                    Wearable.DataApi.removeListener(mGoogleApiClient, this);
-                    mGoogleApiClient.disconnect();
-                }
+                releaseConnection();
             }
             invalidate();
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -243,9 +217,24 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             updateTimer();
         }
 
+        private void releaseConnection() {
+            if (!mConnectionAcquired) {
+                return;
+            }
+            mConnectionAcquired = false;
+            if (mGoogleApiClient.isConnected()) {
+                Wearable.DataApi.removeListener(mGoogleApiClient, this);
+            }
+            mConnection.release(this);
+        }
+
         private void initFormats() {
-            mDayOfWeekFormat = new SimpleDateFormat("EEE", Locale.getDefault());
-            mDateFormat = DateFormat.getDateFormat(SunshineWatchFaceService.this);
+            DayClock clock = DayClock.getDefault();
+            SimpleDateFormat dayOfWeekFormat = new SimpleDateFormat("EEE", Locale.getDefault());
+            java.text.DateFormat dateFormat = DateFormat.getDateFormat(SunshineWatchFaceService.this);
+            dayOfWeekFormat.setTimeZone(clock.getTimeZone());
+            dateFormat.setTimeZone(clock.getTimeZone());
+            mRenderer.setFormats(clock, dayOfWeekFormat, dateFormat);
         }
 
         private void registerReceiver() {
@@ -272,22 +261,32 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             // Load resources that have alternate values for round watches.
             Resources resources = SunshineWatchFaceService.this.getResources();
             boolean isRound = insets.isRound();
-            mXOffset = resources.getDimension(isRound ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
-            mXOffsetWeather = resources.getDimension(isRound ? R.dimen.digital_x_offset_round_weather : R.dimen.digital_x_offset_weather);
+            mRenderer.setXOffsets(
+                    resources.getDimension(isRound ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset),
+                    resources.getDimension(isRound ? R.dimen.digital_x_offset_round_weather : R.dimen.digital_x_offset_weather));
             float textSizeTime = resources.getDimension(isRound ? R.dimen.digital_text_size_round : R.dimen.digital_text_size);
             float textSizeDate = resources.getDimension(isRound ? R.dimen.digital_text_size_round_date : R.dimen.digital_text_size_date);
             float textSize = resources.getDimension(isRound ? R.dimen.digital_text_size_round_other : R.dimen.digital_text_size_other);
 
-            mTimePaint.setTextSize(textSizeTime);
-            mDatePaint.setTextSize(textSizeDate);
-            mWeatherMaxPaint.setTextSize(textSize);
-            mWeatherMinPaint.setTextSize(textSize);
+            mRenderer.mTimePaint.setTextSize(textSizeTime);
+            mRenderer.mDatePaint.setTextSize(textSizeDate);
+            mRenderer.mWeatherMaxPaint.setTextSize(textSize);
+            mRenderer.mWeatherMinPaint.setTextSize(textSize);
+            mRenderer.onTextSizesChanged();
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mRenderer.invalidateLayers();
+        }
+
+        @Override
+        public void onPeekCardPositionUpdate(Rect rect) {
+            super.onPeekCardPositionUpdate(rect);
+            mRenderer.setPeekCardShown(!rect.isEmpty());
+            invalidate();
         }
 
         @Override
@@ -299,15 +298,15 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         @Override
         public void onAmbientModeChanged(boolean inAmbientMode) {
             super.onAmbientModeChanged(inAmbientMode);
-            if (mAmbient != inAmbientMode) {
-                mAmbient = inAmbientMode;
-            }
+            mRenderer.setAmbient(inAmbientMode);
             if (mLowBitAmbient) {
-                mTimePaint.setAntiAlias(!inAmbientMode);
-                mDatePaint.setAntiAlias(!inAmbientMode);
+                mRenderer.mTimePaint.setAntiAlias(!inAmbientMode);
+                mRenderer.mDatePaint.setAntiAlias(!inAmbientMode);
                 mLinesPaint.setAntiAlias(!inAmbientMode);
-                mWeatherMaxPaint.setAntiAlias(!inAmbientMode);
-                mWeatherMinPaint.setAntiAlias(!inAmbientMode);
+                mRenderer.mWeatherMaxPaint.setAntiAlias(!inAmbientMode);
+                mRenderer.mWeatherMinPaint.setAntiAlias(!inAmbientMode);
+                // each layer is only drawn in its own mode, with the paints of that mode
+                mRenderer.mWeatherIconPaint.setFilterBitmap(!inAmbientMode);
             }
             invalidate();
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -317,47 +316,24 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            long now = System.currentTimeMillis();
-            mDate.setTime(now);
-            // Draw the background.
-            canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-
-            // Draw HH:MM in ambient mode or HH:MM:SS in interactive mode.
-            mTime.setToNow();
-            String text = mAmbient
-                    ? String.format("%02d:%02d", mTime.hour, mTime.minute)
-                    : String.format("%02d:%02d:%02d", mTime.hour, mTime.minute, mTime.second);
-            canvas.drawText(text, mXOffset, mYOffset, mTimePaint);
-
-            String day = String.format("%s, %s", mDayOfWeekFormat.format(mDate), mDateFormat.format(mDate)).toUpperCase();
-
-            float widthDay = mDatePaint.measureText(day);
-            float dayX = (bounds.width() - widthDay) / 2;
-            canvas.drawText(day, dayX, mYOffset + mLineHeight, mDatePaint);
-
-            if (getPeekCardPosition().isEmpty()) {
-                float x = mXOffsetWeather;
-                float yStart = mYOffset + mLineHeight;
-                float y = yStart + (mBitmapHeight / 2);
-
-                if(mIconBitmap!=null) {
-                    canvas.drawBitmap(mIconBitmap, x, y, mWeatherIconPaint);
-                    x += mIconBitmap.getWidth() + 10;
-                    y += mIconBitmap.getHeight()/2;
-                }else {
-                    x+= mBitmapWidth + 10;
-                    y += mBitmapHeight/2;
-                }
-                canvas.drawText(mTempMax, x, y, mWeatherMaxPaint);
-                x += mWeatherMaxPaint.measureText(mTempMax) + 10;
-                canvas.drawText(mTempMin, x, y, mWeatherMinPaint);
-            }
+            // Runs every second in interactive mode, without allocating
+            mRenderer.draw(canvas, bounds.width(), bounds.height(), System.currentTimeMillis());
         }
 
         @Override
         public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
             mBitmapHeight = height/4;
             mBitmapWidth = width/4;
+            if (mIconBitmap == null) {
+                // the cached icon, decoded right away for the first frame: it's small
+                byte[] data = mCache.readIcon();
+                if (data != null) {
+                    mIconBitmap = decodeIcon(data, null, mBitmapWidth, mBitmapHeight);
+                    mIconDigest = mIconBitmap != null ? mCache.getIconDigest() : null;
+                }
+            }
+            mRenderer.setIconBox(mBitmapWidth, mBitmapHeight);
+            mRenderer.setIcon(mIconBitmap);
             super.onSurfaceChanged(holder, format, width, height);
         }
 
@@ -393,18 +369,8 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         }
 
         public void requestInfo(){
-            Log.d("Sunshine", "requestInfo");
-            new AsyncTask<Void, Void, Void>(){
-                @Override
-                protected Void doInBackground(Void... params) {
-                    NodeApi.GetConnectedNodesResult nodes = Wearable.NodeApi.getConnectedNodes(mGoogleApiClient).await();
-                    byte[] bytes = "".getBytes();
-                    for(Node node : nodes.getNodes()){
-                        Wearable.MessageApi.sendMessage(mGoogleApiClient, node.getId(), "/path/requestInfo", bytes);
-                    }
-                    return null;
-                }
-            }.execute();
+            // the size of the icon box, so that the phone sends an icon that fits it
+            mConnection.requestInfo(mBitmapWidth, mBitmapHeight);
         }
 
 
@@ -412,33 +378,153 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         public void onConnected(Bundle connectionHint) {
             Log.d("SunshineWatchFace", "onConnected: " + connectionHint);
             Wearable.DataApi.addListener(mGoogleApiClient, Engine.this);
+            // The phone publishes the forecast of today when a sync changes it: the latest one
+            // is already in the local data layer, there's no need to ask for it
+            Wearable.DataApi.getDataItems(mGoogleApiClient).setResultCallback(new ResultCallback<DataItemBuffer>() {
+                @Override
+                public void onResult(DataItemBuffer dataItems) {
+                    for(DataItem dataItem : dataItems){
+                        onDataItem(dataItem);
+                    }
+                    dataItems.release();
+                    requestInfoIfStale();
+                }
+            });
         }
 
-        @Override
-        public void onConnectionSuspended(int cause) {
-            Log.d("SunshineWatchFace", "onConnectionSuspended: " + cause);
+        /**
+         * Asks the phone for the forecast when the data layer had none for today, the
+         * fallback of the forecasts published by the phone.
+         */
+        private void requestInfoIfStale() {
+            if(mDateLastSync == null){
+                requestInfo();
+            }else{
+
+                DayClock clock = DayClock.getDefault();
+                int lastSyncDay = clock.getEpochDay(mDateLastSync.getTime());
+                int currentDay = clock.getEpochDay(System.currentTimeMillis());
+
+                if(lastSyncDay != currentDay){
+                    requestInfo();
+                }else if(BuildConfig.DEBUG){
+                    //Log.d("SunshineWatchFace", "Message send only for debug");
+                    //requestInfo();
+                }
+            }
         }
 
         @Override
-        public void onConnectionFailed(ConnectionResult result) {
-            Log.d("SunshineWatchFace", "onConnectionFailed: " + result);
+        public void onConnectionSuspended(int cause) {
+            Log.d("SunshineWatchFace", "onConnectionSuspended: " + cause);
         }
 
-        public Bitmap loadBitmapFromAsset(Asset asset) {
+        /**
+         * Reads the encoded icon of an asset through the client of the engine, which has to be
+         * connected already and stays connected.
+         *
+         * @return the icon, null if the asset can't be read
+         */
+        private byte[] readAsset(Asset asset) {
             if (asset == null) {
                 throw new IllegalArgumentException("Asset must be non-null");
             }
-            ConnectionResult result = mGoogleApiClient.blockingConnect(10000, TimeUnit.MILLISECONDS);
-            if (!result.isSuccess()) {
+            if (!mGoogleApiClient.isConnected()) {
                 return null;
             }
             InputStream assetInputStream = Wearable.DataApi.getFdForAsset(mGoogleApiClient, asset).await().getInputStream();
-            mGoogleApiClient.disconnect();
-
             if (assetInputStream == null) {
                 return null;
             }
-            return BitmapFactory.decodeStream(assetInputStream);
+            try {
+                return readFully(assetInputStream);
+            } catch (IOException e) {
+                Log.e("SunshineWatchFace", "Error reading the icon", e);
+                return null;
+            }
+        }
+
+        /**
+         * Decodes an encoded icon to the size of the icon box, in the memory of the reuse bitmap
+         * when it's big enough.
+         *
+         * @return the icon, null if it can't be decoded
+         */
+        private Bitmap decodeIcon(byte[] data, Bitmap reuse, int boxWidth, int boxHeight) {
+            if (boxWidth <= 0 || boxHeight <= 0) {
+                return null;
+            }
+
+            // First the size only, then the decode straight to the size of the box
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            int width = options.outWidth;
+            int height = options.outHeight;
+            if (width <= 0 || height <= 0) {
+                return null;
+            }
+            int sampleSize = 1;
+            while (width / (sampleSize * 2) >= boxWidth && height / (sampleSize * 2) >= boxHeight) {
+                sampleSize *= 2;
+            }
+            int sampledWidth = width / sampleSize;
+            int sampledHeight = height / sampleSize;
+
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = sampleSize;
+            options.inMutable = true;
+            // scaled to fit the box, keeping the aspect ratio
+            options.inScaled = true;
+            int targetWidth;
+            int targetHeight;
+            if ((long) boxWidth * sampledHeight <= (long) boxHeight * sampledWidth) {
+                options.inDensity = sampledWidth;
+                options.inTargetDensity = boxWidth;
+                targetWidth = boxWidth;
+                targetHeight = Math.max(1, Math.round((float) sampledHeight * boxWidth / sampledWidth));
+            } else {
+                options.inDensity = sampledHeight;
+                options.inTargetDensity = boxHeight;
+                targetWidth = Math.max(1, Math.round((float) sampledWidth * boxHeight / sampledHeight));
+                targetHeight = boxHeight;
+            }
+            if (reuse != null && !reuse.isRecycled() && reuse.isMutable()
+                    && reuse.getAllocationByteCount() >= targetWidth * targetHeight * 4) {
+                options.inBitmap = reuse;
+                try {
+                    return withoutDensity(BitmapFactory.decodeByteArray(data, 0, data.length, options));
+                } catch (IllegalArgumentException e) {
+                    // the reuse bitmap doesn't fit the decode after all
+                    options.inBitmap = null;
+                }
+            }
+            return withoutDensity(BitmapFactory.decodeByteArray(data, 0, data.length, options));
+        }
+
+        /**
+         * The decode leaves the box size as the density of the icon, which would make the
+         * canvas scale it again to the density of the screen: the icon is already in pixels.
+         */
+        private Bitmap withoutDensity(Bitmap icon) {
+            if (icon != null) {
+                icon.setDensity(Bitmap.DENSITY_NONE);
+            }
+            return icon;
+        }
+
+        private byte[] readFully(InputStream in) throws IOException {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+                return out.toByteArray();
+            } finally {
+                in.close();
+            }
         }
 
         @Override
@@ -446,27 +532,65 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             Log.d("Sunshine", "onDataChanged");
             for(DataEvent dataEvent : dataEventBuffer){
                 if(dataEvent.getType() == DataEvent.TYPE_CHANGED){
-                    DataMap dataMap = DataMapItem.fromDataItem(dataEvent.getDataItem()).getDataMap();
-                    String path = dataEvent.getDataItem().getUri().getPath();
-                    if(path.equals("/weather-info")){
-                        mTempMax = dataMap.getString("temp-max");
-                        mTempMin = dataMap.getString("temp-min");
-                        Asset asset = dataMap.getAsset("icon");
-                        new AsyncTask<Asset,Void,Void>(){
-                            @Override
-                            protected Void doInBackground(Asset... params) {
-                                Bitmap b = loadBitmapFromAsset(params[0]);
-                                Matrix m = new Matrix();
-                                m.setRectToRect(new RectF(0, 0, b.getWidth(), b.getHeight()), new RectF(0, 0, mBitmapWidth, mBitmapHeight), Matrix.ScaleToFit.CENTER);
-                                mIconBitmap = Bitmap.createBitmap(b, 0, 0, b.getWidth(), b.getHeight(), m, true);
-                                mDateLastSync = new Date(System.currentTimeMillis());
-                                invalidate();
-                                updateTimer();
-                                return null;
-                            }
-                        }.execute(asset);
-                    }
+                    onDataItem(dataEvent.getDataItem());
+                }
+            }
+        }
+
+        private void onDataItem(DataItem dataItem) {
+            DataMap dataMap = DataMapItem.fromDataItem(dataItem).getDataMap();
+            String path = dataItem.getUri().getPath();
+            if(path.equals("/weather-info")){
+                mTempMax = dataMap.getString("temp-max");
+                mTempMin = dataMap.getString("temp-min");
+                mRenderer.setWeather(mTempMax, mTempMin);
+                // the day of the forecast, to know whether it's still today's
+                mDateLastSync = new Date(dataMap.getLong("date", System.currentTimeMillis()));
+                mCache.saveForecast(mTempMax, mTempMin, dataMap.getInt("weather-id", -1),
+                        mDateLastSync.getTime());
+                invalidate();
+            }else if(path.equals("/weather-icon")){
+                // the icon only comes when it changes, and the same icon isn't decoded twice
+                final String digest = dataMap.getString("icon-digest");
+                Asset asset = dataMap.getAsset("icon");
+                if(asset == null || (digest != null && digest.equals(mIconDigest))){
+                    return;
                 }
+                // The icon on screen stays untouched while the next one is decoded in the
+                // memory of the one before it
+                final Bitmap reuse = mSpareIcon;
+                mSpareIcon = null;
+                final int boxWidth = mBitmapWidth;
+                final int boxHeight = mBitmapHeight;
+                new AsyncTask<Asset,Void,Bitmap>(){
+                    @Override
+                    protected Bitmap doInBackground(Asset... params) {
+                        byte[] data = readAsset(params[0]);
+                        if(data == null){
+                            return null;
+                        }
+                        // kept for the next start of the face
+                        mCache.saveIcon(data, digest);
+                        return decodeIcon(data, reuse, boxWidth, boxHeight);
+                    }
+
+                    @Override
+                    protected void onPostExecute(Bitmap icon) {
+                        // on the main thread, like the drawing of the static layers
+                        if(icon == null){
+                            mSpareIcon = reuse;
+                            return;
+                        }
+                        if(mIconBitmap != null && mIconBitmap != icon){
+                            mSpareIcon = mIconBitmap;
+                        }
+                        mIconBitmap = icon;
+                        mIconDigest = digest;
+                        mRenderer.setIcon(icon);
+                        invalidate();
+                        updateTimer();
+                    }
+                }.execute(asset);
             }
         }
     }
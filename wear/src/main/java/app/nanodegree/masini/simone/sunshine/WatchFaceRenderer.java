@@ -0,0 +1,297 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import java.text.DateFormat;
+import java.util.Date;
+
+import app.nanodegree.masini.simone.sunshine.shared.DayClock;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine
+ *
+ * What {@link SunshineWatchFaceService} draws, apart from the engine and the services it talks
+ * to: the time, from a buffer rewritten digit by digit, over a static layer with everything
+ * else on it (background, date line, icon and temperatures).
+ *
+ * The static layer is drawn off-screen once for each mode, and only drawn again when something
+ * on it changes. The date line is formatted and measured once a day, the temperatures when
+ * they change, so that a frame allocates nothing.
+ *
+ * Used on the main thread only.
+ */
+final class WatchFaceRenderer {
+
+    /**
+     * Indexes of the static layers, one for each mode.
+     */
+    static final int LAYER_INTERACTIVE = 0;
+    static final int LAYER_AMBIENT = 1;
+
+    // Set up by the engine: colors, typefaces, text sizes and anti-aliasing
+    final Paint mBackgroundPaint = new Paint();
+    final Paint mTimePaint = new Paint();
+    final Paint mDatePaint = new Paint();
+    final Paint mWeatherIconPaint = new Paint();
+    final Paint mWeatherMaxPaint = new Paint();
+    final Paint mWeatherMinPaint = new Paint();
+
+    // "HH:MM:SS", its digits rewritten by updateTimeText(), drawn without the seconds in
+    // ambient mode
+    final char[] mTimeText = {'0', '0', ':', '0', '0', ':', '0', '0'};
+
+    // Everything but the time drawn off-screen and copied at every frame, one layer for each
+    // mode, with the size each one was created for
+    private final Canvas mLayerCanvas;
+    private final Bitmap[] mLayers = new Bitmap[2];
+    private final int[] mLayerWidths = new int[2];
+    private final int[] mLayerHeights = new int[2];
+    private final boolean[] mLayerValid = new boolean[2];
+
+    // Clock of the time zone the time is drawn in, and the formats of the date line in it
+    private DayClock mClock;
+    private DateFormat mDayOfWeekFormat;
+    private DateFormat mDateFormat;
+    private final Date mDate = new Date();
+
+    // The date line and the widths of the texts change at most once a day, or when the data
+    // or the text sizes change, not at every frame
+    private String mDateText;
+    private int mDateTextDay = Integer.MIN_VALUE;
+    private float mDateTextWidth;
+    private String mTempMax = "--";
+    private String mTempMin = "--";
+    private float mTempMaxWidth;
+
+    private Bitmap mIcon;
+    private int mIconBoxWidth;
+    private int mIconBoxHeight;
+
+    private boolean mAmbient;
+    private boolean mPeekCardShown;
+
+    private float mXOffset;
+    private float mXOffsetWeather;
+    private float mYOffset;
+    private float mLineHeight;
+
+    /**
+     * @param layerCanvas the canvas the static layers are drawn with, pointed at each layer
+     *                    while it's drawn
+     */
+    WatchFaceRenderer(Canvas layerCanvas) {
+        mLayerCanvas = layerCanvas;
+    }
+
+    /**
+     * Sets the clock of the time zone and the formats of the date line, already in that zone.
+     */
+    void setFormats(DayClock clock, DateFormat dayOfWeekFormat, DateFormat dateFormat) {
+        mClock = clock;
+        mDayOfWeekFormat = dayOfWeekFormat;
+        mDateFormat = dateFormat;
+        // the date line is formatted again at the next frame
+        mDateTextDay = Integer.MIN_VALUE;
+    }
+
+    void setVerticalMetrics(float yOffset, float lineHeight) {
+        mYOffset = yOffset;
+        mLineHeight = lineHeight;
+        invalidateLayers();
+    }
+
+    void setXOffsets(float xOffset, float xOffsetWeather) {
+        mXOffset = xOffset;
+        mXOffsetWeather = xOffsetWeather;
+        invalidateLayers();
+    }
+
+    /**
+     * Measures the texts again, after the text sizes of the paints have changed.
+     */
+    void onTextSizesChanged() {
+        mDateTextDay = Integer.MIN_VALUE;
+        measureWeatherText();
+    }
+
+    void setWeather(String tempMax, String tempMin) {
+        mTempMax = tempMax;
+        mTempMin = tempMin;
+        measureWeatherText();
+    }
+
+    /**
+     * @param icon the icon of the forecast, null if there's none yet
+     */
+    void setIcon(Bitmap icon) {
+        mIcon = icon;
+        invalidateLayers();
+    }
+
+    /**
+     * Sets the size of the box of the icon, which is kept free when there's no icon.
+     */
+    void setIconBox(int width, int height) {
+        mIconBoxWidth = width;
+        mIconBoxHeight = height;
+        invalidateLayers();
+    }
+
+    void setAmbient(boolean ambient) {
+        // each mode has its own layer
+        mAmbient = ambient;
+    }
+
+    void setPeekCardShown(boolean peekCardShown) {
+        if (peekCardShown != mPeekCardShown) {
+            mPeekCardShown = peekCardShown;
+            invalidateLayers();
+        }
+    }
+
+    /**
+     * Marks the static layers to be drawn again at the next frame of their mode.
+     */
+    void invalidateLayers() {
+        mLayerValid[LAYER_INTERACTIVE] = false;
+        mLayerValid[LAYER_AMBIENT] = false;
+    }
+
+    /**
+     * Recycles the static layers, when the face goes away.
+     */
+    void release() {
+        for (int i = 0; i < mLayers.length; i++) {
+            if (mLayers[i] != null) {
+                mLayers[i].recycle();
+                mLayers[i] = null;
+            }
+            mLayerWidths[i] = 0;
+            mLayerHeights[i] = 0;
+            mLayerValid[i] = false;
+        }
+    }
+
+    /**
+     * Draws a frame: HH:MM in ambient mode or HH:MM:SS in interactive mode, over the static
+     * layer of the mode.
+     */
+    void draw(Canvas canvas, int width, int height, long now) {
+        // Runs every second in interactive mode: nothing in here allocates, the texts are
+        // updated in place or only when their day or data change, and all but the time is
+        // copied from the static layer.
+        updateTimeText(now);
+        updateDateText(now);
+
+        canvas.drawBitmap(getStaticLayer(width, height), 0, 0, null);
+        canvas.drawText(mTimeText, 0, mAmbient ? 5 : mTimeText.length, mXOffset, mYOffset, mTimePaint);
+    }
+
+    /**
+     * Writes the time of the instant in {@link #mTimeText}, digit by digit.
+     */
+    void updateTimeText(long now) {
+        long local = now + mClock.getOffset(now);
+        int secondOfDay = (int) ((local % DayClock.MILLIS_PER_DAY + DayClock.MILLIS_PER_DAY)
+                % DayClock.MILLIS_PER_DAY / 1000);
+        int hour = secondOfDay / 3600;
+        int minute = secondOfDay / 60 % 60;
+        int second = secondOfDay % 60;
+        mTimeText[0] = (char) ('0' + hour / 10);
+        mTimeText[1] = (char) ('0' + hour % 10);
+        mTimeText[3] = (char) ('0' + minute / 10);
+        mTimeText[4] = (char) ('0' + minute % 10);
+        mTimeText[6] = (char) ('0' + second / 10);
+        mTimeText[7] = (char) ('0' + second % 10);
+    }
+
+    /**
+     * Formats and measures the date line, when the day of the instant isn't the one it was
+     * formatted for.
+     */
+    void updateDateText(long now) {
+        int day = mClock.getEpochDay(now);
+        if (day == mDateTextDay) {
+            return;
+        }
+        mDate.setTime(now);
+        mDateText = String.format("%s, %s", mDayOfWeekFormat.format(mDate), mDateFormat.format(mDate)).toUpperCase();
+        mDateTextWidth = mDatePaint.measureText(mDateText);
+        mDateTextDay = day;
+        invalidateLayers();
+    }
+
+    /**
+     * @return the date line of the current day, null before the first frame
+     */
+    String getDateText() {
+        return mDateText;
+    }
+
+    /**
+     * Measures the temperatures, when they or the text sizes change.
+     */
+    private void measureWeatherText() {
+        mTempMaxWidth = mWeatherMaxPaint.measureText(mTempMax);
+        invalidateLayers();
+    }
+
+    /**
+     * @return the static layer of the current mode, drawn again if something on it has changed
+     */
+    Bitmap getStaticLayer(int width, int height) {
+        int index = mAmbient ? LAYER_AMBIENT : LAYER_INTERACTIVE;
+        if (mLayerWidths[index] != width || mLayerHeights[index] != height) {
+            if (mLayers[index] != null) {
+                mLayers[index].recycle();
+            }
+            mLayers[index] = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mLayerWidths[index] = width;
+            mLayerHeights[index] = height;
+            mLayerValid[index] = false;
+        }
+        Bitmap layer = mLayers[index];
+        if (!mLayerValid[index]) {
+            // drawn with the paints of the current mode, without anti-aliasing on low-bit
+            // ambient screens
+            mLayerCanvas.setBitmap(layer);
+            drawStaticLayer(mLayerCanvas, width, height);
+            mLayerCanvas.setBitmap(null);
+            mLayerValid[index] = true;
+        }
+        return layer;
+    }
+
+    /**
+     * Draws everything but the time: the background, the date line and, unless a card hides
+     * it, the icon and the temperatures.
+     */
+    void drawStaticLayer(Canvas canvas, int width, int height) {
+        // Draw the background.
+        canvas.drawRect(0, 0, width, height, mBackgroundPaint);
+
+        float dayX = (width - mDateTextWidth) / 2;
+        canvas.drawText(mDateText, dayX, mYOffset + mLineHeight, mDatePaint);
+
+        if (!mPeekCardShown) {
+            float x = mXOffsetWeather;
+            float yStart = mYOffset + mLineHeight;
+            float y = yStart + (mIconBoxHeight / 2);
+
+            if(mIcon!=null) {
+                canvas.drawBitmap(mIcon, x, y, mWeatherIconPaint);
+                x += mIcon.getWidth() + 10;
+                y += mIcon.getHeight()/2;
+            }else {
+                x+= mIconBoxWidth + 10;
+                y += mIconBoxHeight/2;
+            }
+            canvas.drawText(mTempMax, x, y, mWeatherMaxPaint);
+            x += mTempMaxWidth + 10;
+            canvas.drawText(mTempMin, x, y, mWeatherMinPaint);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine
+ *
+ * The last forecast received from the phone, kept on the watch: the temperatures, the
+ * condition and the day in a preferences file, the encoded icon in a file next to it. The
+ * watch face starts from it, without waiting for the phone.
+ */
+final class WeatherCache {
+
+    private static final String LOG_TAG = "SunshineWatchFace";
+
+    private static final String PREFS = "weather_cache";
+    private static final String PREF_TEMP_MAX = "temp_max";
+    private static final String PREF_TEMP_MIN = "temp_min";
+    private static final String PREF_WEATHER_ID = "weather_id";
+    private static final String PREF_DATE = "date";
+    private static final String PREF_ICON_DIGEST = "icon_digest";
+
+    private static final String ICON_FILE = "weather_icon.png";
+
+    private final SharedPreferences mPrefs;
+    private final File mIconFile;
+
+    WeatherCache(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        mIconFile = new File(context.getFilesDir(), ICON_FILE);
+    }
+
+    /**
+     * @return whether there's a forecast
+     */
+    boolean hasForecast() {
+        return mPrefs.contains(PREF_DATE);
+    }
+
+    String getTempMax() {
+        return mPrefs.getString(PREF_TEMP_MAX, null);
+    }
+
+    String getTempMin() {
+        return mPrefs.getString(PREF_TEMP_MIN, null);
+    }
+
+    /**
+     * @return the condition of the forecast, -1 if unknown
+     */
+    int getWeatherId() {
+        return mPrefs.getInt(PREF_WEATHER_ID, -1);
+    }
+
+    /**
+     * @return the date of the forecast, 0 if there's none
+     */
+    long getDate() {
+        return mPrefs.getLong(PREF_DATE, 0);
+    }
+
+    /**
+     * @return the digest of the icon in {@link #readIcon()}, null if there's none
+     */
+    String getIconDigest() {
+        return mPrefs.getString(PREF_ICON_DIGEST, null);
+    }
+
+    void saveForecast(String tempMax, String tempMin, int weatherId, long date) {
+        if (date == getDate() && weatherId == getWeatherId()
+                && tempMax.equals(getTempMax()) && tempMin.equals(getTempMin())) {
+            return;
+        }
+        mPrefs.edit()
+                .putString(PREF_TEMP_MAX, tempMax)
+                .putString(PREF_TEMP_MIN, tempMin)
+                .putInt(PREF_WEATHER_ID, weatherId)
+                .putLong(PREF_DATE, date)
+                .apply();
+    }
+
+    /**
+     * @return the encoded icon, null if there's none
+     */
+    byte[] readIcon() {
+        if (getIconDigest() == null || !mIconFile.isFile()) {
+            return null;
+        }
+        byte[] data = new byte[(int) mIconFile.length()];
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(mIconFile);
+            int offset = 0;
+            int count;
+            while (offset < data.length && (count = in.read(data, offset, data.length - offset)) != -1) {
+                offset += count;
+            }
+            return offset == data.length ? data : null;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading the cached icon", e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // nothing left to do with it
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps the encoded icon. Writes a file, meant for a background thread.
+     */
+    void saveIcon(byte[] data, String digest) {
+        if (digest != null && digest.equals(getIconDigest()) && mIconFile.isFile()) {
+            return;
+        }
+        // written aside and then renamed, so that the file is never half an icon
+        File tempFile = new File(mIconFile.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tempFile);
+            out.write(data);
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(mIconFile)) {
+                throw new IOException("Can't rename " + tempFile);
+            }
+            mPrefs.edit().putString(PREF_ICON_DIGEST, digest).apply();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing the cached icon", e);
+            tempFile.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // nothing left to do with it
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine
+ *
+ * Counts the bytes a piece of code allocates on the heap, on the JVM running the unit tests
+ * (HotSpot, through com.sun.management.ThreadMXBean).
+ */
+final class Allocations {
+
+    private static final int WARM_UP_RUNS = 2000;
+    private static final int ATTEMPTS = 5;
+
+    private Allocations() {
+    }
+
+    /**
+     * Runs the task until it's warmed up, then counts what it allocates in the given number of
+     * runs. The least of a few attempts is taken, so that an allocation of the JVM itself in
+     * the middle of one doesn't count.
+     *
+     * @return the bytes allocated by the runs, 0 if none
+     */
+    static long count(Runnable task, int runs) {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            task.run();
+        }
+        long least = Long.MAX_VALUE;
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            // reading the counter allocates a little of its own
+            long start = allocatedBytes();
+            long overhead = allocatedBytes() - start;
+            start = allocatedBytes();
+            for (int i = 0; i < runs; i++) {
+                task.run();
+            }
+            least = Math.min(least, allocatedBytes() - start - overhead);
+        }
+        return Math.max(least, 0);
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,61 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine
+ *
+ * A canvas that draws nothing and counts what it's asked to draw, without allocating, so that
+ * it can stand in for the one of the screen in the allocation counts.
+ */
+class RecordingCanvas extends Canvas {
+
+    int rects;
+    int bitmaps;
+    int texts;
+    // The characters of the last text drawn from a char array
+    int lastCharCount;
+
+    /**
+     * @return the draw calls recorded
+     */
+    int drawCalls() {
+        return rects + bitmaps + texts;
+    }
+
+    void reset() {
+        rects = 0;
+        bitmaps = 0;
+        texts = 0;
+        lastCharCount = 0;
+    }
+
+    @Override
+    public void setBitmap(Bitmap bitmap) {
+        // nothing to draw into
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+        rects++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+        bitmaps++;
+    }
+
+    @Override
+    public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+        texts++;
+        lastCharCount = count;
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, Paint paint) {
+        texts++;
+    }
+}
@@ -0,0 +1,81 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import app.nanodegree.masini.simone.sunshine.shared.DayClock;
+
+/**
+ * Project: Sunshine
+ * Package: app.nanodegree.masini.simone.sunshine
+ *
+ * A {@link WatchFaceRenderer} set up like the engine sets it up on a round watch, drawing on
+ * recording canvases a frame a second, the way the engine does in interactive mode.
+ */
+class WatchFaceHarness {
+
+    static final int WIDTH = 320;
+    static final int HEIGHT = 320;
+    static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Europe/Rome");
+    // Monday 30 November 2015, 08:00 in Rome
+    static final long MORNING = 1448866800000L;
+
+    // Fewer than there are seconds left in the morning
+    private static final int WARM_UP_FRAMES = 10000;
+    private static final int ATTEMPTS = 5;
+
+    final RecordingCanvas screen = new RecordingCanvas();
+    final RecordingCanvas layerCanvas = new RecordingCanvas();
+    final WatchFaceRenderer renderer = new WatchFaceRenderer(layerCanvas);
+    final DayClock clock = DayClock.forTimeZone(TIME_ZONE);
+
+    // The instant of the next frame
+    long now = MORNING;
+
+    /**
+     * Draws the next frame and moves on by a second.
+     */
+    final Runnable frame = new Runnable() {
+        @Override
+        public void run() {
+            renderer.draw(screen, WIDTH, HEIGHT, now);
+            now += 1000;
+        }
+    };
+
+    WatchFaceHarness() {
+        SimpleDateFormat dayOfWeekFormat = new SimpleDateFormat("EEE", Locale.US);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("M/d/yyyy", Locale.US);
+        dayOfWeekFormat.setTimeZone(TIME_ZONE);
+        dateFormat.setTimeZone(TIME_ZONE);
+        renderer.setFormats(clock, dayOfWeekFormat, dateFormat);
+        renderer.setVerticalMetrics(90, 30);
+        renderer.setXOffsets(60, 70);
+        renderer.setIconBox(WIDTH / 4, HEIGHT / 4);
+        renderer.setWeather("21", "12");
+    }
+
+    /**
+     * Times the given number of frames, once they're warmed up, from the same morning each
+     * time. The least of a few attempts is taken.
+     *
+     * @return the time a frame takes, in nanoseconds
+     */
+    double frameCost(Runnable frame, int frames) {
+        now = MORNING;
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            frame.run();
+        }
+        long least = Long.MAX_VALUE;
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            now = MORNING;
+            long start = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                frame.run();
+            }
+            least = Math.min(least, System.nanoTime() - start);
+        }
+        return (double) least / frames;
+    }
+}
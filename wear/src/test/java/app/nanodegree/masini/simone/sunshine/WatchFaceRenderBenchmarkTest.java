@@ -0,0 +1,98 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * What a frame of the watch face costs with the static layer of
+ * {@link WatchFaceRenderer#getStaticLayer(int, int)}, against repainting all of it with
+ * {@link WatchFaceRenderer#drawStaticLayer(android.graphics.Canvas, int, int)} at every frame,
+ * as the face did before the layers. Through {@link WatchFaceHarness}, on the JVM: the draw
+ * calls stand for the work of the watch, the time for the work of the face itself.
+ */
+public class WatchFaceRenderBenchmarkTest {
+
+    private static final int FRAMES = 1000;
+
+    private final WatchFaceHarness mHarness = new WatchFaceHarness();
+
+    /**
+     * A frame of the face before the layers: everything drawn on the screen, then the time.
+     */
+    private final Runnable mRepaintFrame = new Runnable() {
+        @Override
+        public void run() {
+            WatchFaceRenderer renderer = mHarness.renderer;
+            renderer.updateTimeText(mHarness.now);
+            renderer.updateDateText(mHarness.now);
+            renderer.drawStaticLayer(mHarness.screen, WatchFaceHarness.WIDTH, WatchFaceHarness.HEIGHT);
+            mHarness.screen.drawText(renderer.mTimeText, 0, renderer.mTimeText.length, 0, 0,
+                    renderer.mTimePaint);
+            mHarness.now += 1000;
+        }
+    };
+
+    /**
+     * A frame after the layer has changed, drawn again before it's copied.
+     */
+    private final Runnable mRebuildFrame = new Runnable() {
+        @Override
+        public void run() {
+            mHarness.renderer.invalidateLayers();
+            mHarness.frame.run();
+        }
+    };
+
+    private int screenDrawCalls(Runnable frame) {
+        mHarness.screen.reset();
+        frame.run();
+        return mHarness.screen.drawCalls();
+    }
+
+    @Test
+    public void layeredFrameDrawsLessThanRepaint() {
+        mHarness.frame.run();
+        int layeredCalls = screenDrawCalls(mHarness.frame);
+        int repaintCalls = screenDrawCalls(mRepaintFrame);
+        double layeredNanos = mHarness.frameCost(mHarness.frame, FRAMES);
+        double repaintNanos = mHarness.frameCost(mRepaintFrame, FRAMES);
+        double rebuildNanos = mHarness.frameCost(mRebuildFrame, FRAMES);
+
+        System.out.println("Watch face frame: " + repaintCalls + " draw calls and "
+                + Math.round(repaintNanos) + " ns repainted, " + layeredCalls + " draw calls and "
+                + Math.round(layeredNanos) + " ns from the static layer, "
+                + Math.round(rebuildNanos) + " ns when the layer is drawn again");
+        // the layer and the time, against the background, the date line, the two
+        // temperatures and the time
+        assertEquals(2, layeredCalls);
+        assertEquals(5, repaintCalls);
+        assertTrue(layeredCalls < repaintCalls);
+    }
+
+    @Test
+    public void layerIsDrawnOnlyForItsChanges() {
+        RecordingCanvas layer = mHarness.layerCanvas;
+        // an hour of interactive frames, with a new forecast and a card shown in the middle
+        for (int i = 0; i < 3600; i++) {
+            if (i == 1200) {
+                mHarness.renderer.setWeather("22", "13");
+            } else if (i == 2400) {
+                mHarness.renderer.setPeekCardShown(true);
+            }
+            mHarness.frame.run();
+        }
+        System.out.println("An hour of watch face frames: the static layer drawn " + layer.rects
+                + " times, " + layer.drawCalls() + " draw calls in it");
+        assertEquals(3, layer.rects);
+    }
+
+    @Test
+    public void repaintAndRebuildAllocateNothingEither() {
+        // so what sets the frames apart is the drawing only
+        mHarness.frame.run();
+        assertEquals(0, Allocations.count(mRepaintFrame, FRAMES));
+        assertEquals(0, Allocations.count(mRebuildFrame, FRAMES));
+    }
+}
@@ -0,0 +1,104 @@
+package app.nanodegree.masini.simone.sunshine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The frames of {@link WatchFaceRenderer} on the JVM, through {@link WatchFaceHarness}: what
+ * they draw, and that a frame with nothing new to draw but the time allocates nothing.
+ */
+public class WatchFaceRendererTest {
+
+    private static final int FRAMES = 1000;
+
+    private final WatchFaceHarness mHarness = new WatchFaceHarness();
+
+    private static long hours(int hours) {
+        return hours * 60L * 60 * 1000;
+    }
+
+    @Test
+    public void timeIsWrittenDigitByDigit() {
+        mHarness.now = WatchFaceHarness.MORNING + hours(3) + 4 * 60 * 1000 + 5 * 1000;
+        mHarness.frame.run();
+        assertEquals("11:04:05", new String(mHarness.renderer.mTimeText));
+        assertEquals(8, mHarness.screen.lastCharCount);
+
+        // the last second of the day
+        mHarness.now = WatchFaceHarness.MORNING + hours(16) - 1000;
+        mHarness.frame.run();
+        assertEquals("23:59:59", new String(mHarness.renderer.mTimeText));
+        mHarness.frame.run();
+        assertEquals("00:00:00", new String(mHarness.renderer.mTimeText));
+
+        mHarness.renderer.setAmbient(true);
+        mHarness.frame.run();
+        assertEquals("HH:MM only in ambient mode", 5, mHarness.screen.lastCharCount);
+    }
+
+    @Test
+    public void dateLineIsFormattedOnceADay() {
+        mHarness.frame.run();
+        assertEquals("MON, 11/30/2015", mHarness.renderer.getDateText());
+        String dateText = mHarness.renderer.getDateText();
+
+        mHarness.now = WatchFaceHarness.MORNING + hours(16) - 1000;
+        mHarness.frame.run();
+        assertEquals(dateText, mHarness.renderer.getDateText());
+        mHarness.frame.run();
+        assertEquals("TUE, 12/1/2015", mHarness.renderer.getDateText());
+    }
+
+    @Test
+    public void staticLayerIsOnlyDrawnWhenItChanges() {
+        RecordingCanvas layer = mHarness.layerCanvas;
+        mHarness.frame.run();
+        // the background, the date line and the temperatures
+        assertEquals(1, layer.rects);
+        assertEquals(3, layer.texts);
+
+        layer.reset();
+        for (int i = 0; i < 10; i++) {
+            mHarness.frame.run();
+        }
+        assertEquals(0, layer.drawCalls());
+
+        // each mode has its own layer, drawn once
+        mHarness.renderer.setAmbient(true);
+        mHarness.frame.run();
+        mHarness.renderer.setAmbient(false);
+        mHarness.frame.run();
+        mHarness.renderer.setAmbient(true);
+        mHarness.frame.run();
+        assertEquals(1, layer.rects);
+
+        layer.reset();
+        mHarness.renderer.setWeather("22", "12");
+        mHarness.frame.run();
+        assertEquals(1, layer.rects);
+
+        layer.reset();
+        mHarness.renderer.setPeekCardShown(true);
+        mHarness.frame.run();
+        // the temperatures are under the card
+        assertEquals(1, layer.texts);
+    }
+
+    @Test
+    public void steadyFrameAllocatesNothing() {
+        mHarness.frame.run();
+        mHarness.screen.reset();
+        mHarness.frame.run();
+        // the static layer, then the time
+        assertEquals(1, mHarness.screen.bitmaps);
+        assertEquals(1, mHarness.screen.texts);
+
+        // 1000 frames a second apart, a few times over: the same morning
+        long bytes = Allocations.count(mHarness.frame, FRAMES);
+        double nanos = mHarness.frameCost(mHarness.frame, FRAMES);
+        System.out.println("Steady watch face frame: " + bytes / FRAMES + " bytes allocated, "
+                + Math.round(nanos) + " ns on the JVM");
+        assertEquals(0, bytes);
+    }
+}